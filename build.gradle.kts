@@ -3,6 +3,7 @@ plugins {
     application
     `maven-publish`
     id("com.github.ben-manes.versions") version "0.29.0"
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 group = "com.github.Gui-Yom"
@@ -54,6 +55,23 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter:5.6.2")
 }
 
+sourceSets {
+    named("jmh") {
+        // Benchmarks use the same sample images as tests
+        resources.srcDir("src/test/resources")
+    }
+}
+
+jmh {
+    jmhVersion = "1.25"
+    benchmarkMode = listOf("thrpt")
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+}
+
 application {
     mainClass.set("tech.guiyom.anscapes.Main")
 }
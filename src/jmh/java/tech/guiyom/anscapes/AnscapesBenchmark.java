@@ -0,0 +1,69 @@
+package tech.guiyom.anscapes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.guiyom.anscapes.renderer.ImageRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Color matching and escaping primitives. Color benchmarks work on batches of {@value #COUNT} random colors.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnscapesBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final Color[] awtColors = new Color[COUNT];
+    private final int[] rgbColors = new int[COUNT];
+    private final AnsiColor[] ansiColors = new AnsiColor[COUNT];
+    private String sequence;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; ++i) {
+            rgbColors[i] = random.nextInt(0x1000000);
+            awtColors[i] = new Color(rgbColors[i]);
+            ansiColors[i] = Anscapes.rgb(rgbColors[i]);
+        }
+        sequence = ImageRenderer.createRenderer(ColorMode.RGB, 80, 80)
+                           .renderString(ImageIO.read(AnscapesBenchmark.class.getResourceAsStream("/shield.png")));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void findNearestColor(Blackhole bh) {
+        for (Color c : awtColors)
+            bh.consume(Anscapes.findNearestColor(c, 8));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void findNearestColorTable(Blackhole bh) {
+        for (int rgb : rgbColors)
+            bh.consume(Anscapes.findNearestColor(rgb, 8));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void diffBiased(Blackhole bh) {
+        for (int i = 1; i < COUNT; ++i)
+            bh.consume(Anscapes.diffBiased(ansiColors[i - 1], ansiColors[i], 8));
+    }
+
+    @Benchmark
+    public String escape() {
+        return Anscapes.escape(sequence);
+    }
+}
@@ -0,0 +1,85 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.guiyom.anscapes.ColorMode;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Full frame rendering of the sample image, the video use case.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenderBenchmark {
+
+    @Param({ "ANSI", "ANSI256", "RGB" })
+    private ColorMode mode;
+
+    /**
+     * The bias for RGB, the threshold for ANSI, unused for ANSI256.
+     */
+    @Param({ "0", "8", "32" })
+    private int bias;
+
+    @Param({ "80", "200", "360" })
+    private int size;
+
+    /**
+     * Error diffusion kernel of the palette modes, against the plain render. RGB doesn't quantize and ignores it.
+     */
+    @Param({ "NONE", "FLOYD_STEINBERG" })
+    private Kernel kernel;
+
+    private AbstractImageRenderer renderer;
+    private int[] data;
+    private int width;
+    private int height;
+    private BiConsumer<char[], Integer> consumer;
+
+    @Setup
+    public void setup(Blackhole bh) throws IOException {
+        BufferedImage img = ImageIO.read(RenderBenchmark.class.getResourceAsStream("/shield.png"));
+        width = img.getWidth();
+        height = img.getHeight();
+        data = img.getRGB(0, 0, width, height, null, 0, width);
+        if (mode == ColorMode.ANSI)
+            renderer = new AnsiImageRenderer(size, size, bias);
+        else if (mode == ColorMode.ANSI256)
+            renderer = new Ansi256ImageRenderer(size, size);
+        else
+            renderer = new RgbImageRenderer(size, size, bias);
+        if (mode != ColorMode.RGB && kernel.diffusion != null)
+            renderer.setDiffusion(kernel.diffusion);
+        consumer = (buf, len) -> bh.consume(len);
+    }
+
+    @Benchmark
+    public void render() {
+        renderer.render(data, width, height, consumer);
+    }
+
+    /**
+     * JMH can't inject null, the diffusion is null for the plain render.
+     */
+    public enum Kernel {
+        NONE(null),
+        FLOYD_STEINBERG(Diffusion.FLOYD_STEINBERG),
+        ATKINSON(Diffusion.ATKINSON);
+
+        private final Diffusion diffusion;
+
+        Kernel(Diffusion diffusion) {
+            this.diffusion = diffusion;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache hits on the sample image, against rendering it. A hit costs the pixel hash only.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenderCacheBenchmark {
+
+    /**
+     * How the image is stored, byte layouts are converted row by row while hashing.
+     */
+    @Param({ "TYPE_INT_ARGB", "TYPE_4BYTE_ABGR" })
+    private String type;
+
+    @Param({ "NEAREST", "AREA" })
+    private Scaling scaling;
+
+    private RgbImageRenderer renderer;
+    private RenderCache cache;
+    private BufferedImage image;
+
+    @Setup
+    public void setup() throws IOException, ReflectiveOperationException {
+        BufferedImage img = ImageIO.read(RenderCacheBenchmark.class.getResourceAsStream("/shield.png"));
+        image = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.class.getField(type).getInt(null));
+        image.getGraphics().drawImage(img, 0, 0, null);
+        renderer = new RgbImageRenderer(240, 160);
+        renderer.setScaling(scaling);
+        cache = new RenderCache(64 * 1024 * 1024);
+        cache.render(renderer, image);
+    }
+
+    @Benchmark
+    public TerminalImage hit() {
+        return cache.render(renderer, image);
+    }
+
+    @Benchmark
+    public TerminalImage render() {
+        return renderer.render(image);
+    }
+}
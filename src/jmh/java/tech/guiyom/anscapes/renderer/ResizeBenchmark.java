@@ -0,0 +1,53 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizing the sample image to square targets.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResizeBenchmark {
+
+    @Param({ "80", "200", "360" })
+    private int size;
+
+    @Param({ "NEAREST", "AREA" })
+    private Scaling scaling;
+
+    private PixelSource source;
+    private int[] out;
+    private AreaScaler areaScaler;
+    private final Scratch scratch = new Scratch();
+
+    @Setup
+    public void setup() throws IOException {
+        BufferedImage img = ImageIO.read(ResizeBenchmark.class.getResourceAsStream("/shield.png"));
+        int width = img.getWidth();
+        int height = img.getHeight();
+        source = PixelSource.of(img.getRGB(0, 0, width, height, null, 0, width), width, height);
+        out = new int[size * size];
+        areaScaler = new AreaScaler(size, size);
+        areaScaler.update(width, height);
+    }
+
+    @Benchmark
+    public int[] resize() {
+        // Both algorithms reuse the same source and scratch buffers, so their allocation rates compare
+        if (scaling == Scaling.AREA)
+            areaScaler.resize(source, out, 0, size, scratch);
+        else
+            AbstractImageRenderer.resize(source, out, size, size, 0, size, scratch);
+        return out;
+    }
+}
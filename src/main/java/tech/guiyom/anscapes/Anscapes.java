@@ -56,6 +56,9 @@ public final class Anscapes {
             ALTERNATIVE_SCREEN_BUFFER_OFF = CSI + "?1049l",
             RESET_TERMINAL = CSI + 'c';
 
+    // Channel values of the 6 levels of the 256 colors palette cube
+    private static final int[] CUBE_LEVELS = { 0, 95, 135, 175, 215, 255 };
+
     /**
      * Escape to allow copy paste. Useful for commands like 'echo -e'
      *
@@ -168,6 +171,16 @@ public final class Anscapes {
         return CSI + n + "F";
     }
 
+    /**
+     * Repeat the preceding character n times (REP), not supported by all terminals.
+     *
+     * @param n the number of repetitions
+     * @return the corresponding ansi escape code.
+     */
+    public static String repeat(int n) {
+        return CSI + n + "b";
+    }
+
     /**
      * Move cursor to the specified cell.
      *
@@ -252,26 +265,36 @@ public final class Anscapes {
         return new RgbColor(rgb);
     }
 
+    /**
+     * Create a new AnsiColor from its code in the 256 colors palette.
+     * Its rgb components are the ones of the xterm palette, see {@link #rgb256(int)}.
+     *
+     * @param code the color code, between 0 and 255
+     * @return the corresponding ansi color
+     */
     public static AnsiColor from256code(int code) {
+
+        final int rgb = rgb256(code);
+
         return new AnsiColor() {
             @Override
             public Color color() {
-                return null;
+                return new Color(rgb);
             }
 
             @Override
             public int r() {
-                return 0;
+                return (rgb >> 16) & 0xff;
             }
 
             @Override
             public int g() {
-                return 0;
+                return (rgb >> 8) & 0xff;
             }
 
             @Override
             public int b() {
-                return 0;
+                return rgb & 0xff;
             }
 
             @Override
@@ -287,25 +310,51 @@ public final class Anscapes {
     }
 
     /**
+     * Get the rgb value of a color of the 256 colors palette.
+     * The 16 first codes are the {@link Colors}, then comes the 6x6x6 color cube and the 24 steps grayscale ramp.
+     *
+     * @param code the color code, between 0 and 255
+     * @return the packed rgb value of this color in the xterm palette
+     */
+    public static int rgb256(int code) {
+
+        if (code < 0 || code > 255)
+            throw new IllegalArgumentException("Color code should be between 0 and 255.");
+
+        if (code < 16)
+            return Colors.VALUES[code].c.getRGB() & 0xffffff;
+
+        if (code >= 232) {
+            int v = 8 + 10 * (code - 232);
+            return (v << 16) | (v << 8) | v;
+        }
+
+        code -= 16;
+        return (CUBE_LEVELS[code / 36] << 16) | (CUBE_LEVELS[code / 6 % 6] << 8) | CUBE_LEVELS[code % 6];
+    }
+
+    /**
+     * Match against the default rgb values of the colors, use a {@link Palette} to match a terminal theme.
+     *
      * @param c         the color to convert
      * @param threshold distance to evaluate a spot-on
      * @return the nearest ansi color
      */
     public static Colors findNearestColor(Color c, int threshold) {
 
-        // TODO allow user to use its own color palette for ansi colors.
-
         Colors closest = null;
-        float closestDist = Float.MAX_VALUE;
+        int closestDist = Integer.MAX_VALUE;
+        int thresholdSq = threshold > 0 ? threshold * threshold : 0;
 
-        for (Colors ansic : Colors.values()) {
+        for (Colors ansic : Colors.VALUES) {
 
-            float dist = (float) Math.sqrt(Math.pow(ansic.color().getRed() - c.getRed(), 2) +
-                                                   Math.pow(ansic.color().getGreen() - c.getGreen(), 2) +
-                                                   Math.pow(ansic.color().getBlue() - c.getBlue(), 2));
+            int dr = ansic.r() - c.getRed();
+            int dg = ansic.g() - c.getGreen();
+            int db = ansic.b() - c.getBlue();
+            int dist = dr * dr + dg * dg + db * db;
 
             // Speedup, if low distance its a spot-on
-            if (dist < threshold) {
+            if (dist < thresholdSq) {
                 return ansic;
             }
 
@@ -317,10 +366,41 @@ public final class Anscapes {
         return closest;
     }
 
+    /**
+     * Fast version of {@link #findNearestColor(Color, int)} using a shared precomputed table.
+     * Colors are quantized to 6 bits per channel before matching.
+     *
+     * @param rgb       the packed rgb color to convert, alpha is ignored
+     * @param threshold distance to evaluate a spot-on
+     * @return the nearest ansi color
+     * @see NearestColorTable
+     */
+    public static Colors findNearestColor(int rgb, int threshold) {
+        return Colors.VALUES[NearestColorTable.ansi(threshold).nearest(rgb)];
+    }
+
+    /**
+     * Same as {@link #findNearestColor(int, int)} with another color distance.
+     *
+     * @param rgb       the packed rgb color to convert, alpha is ignored
+     * @param threshold distance to evaluate a spot-on, in the unit of the metric
+     * @param metric    the distance used to match colors
+     * @return the nearest ansi color
+     */
+    public static Colors findNearestColor(int rgb, int threshold, ColorMetric metric) {
+        return Colors.VALUES[NearestColorTable.ansi(threshold, metric).nearest(rgb)];
+    }
+
     static boolean diffBiased(AnsiColor c1, AnsiColor c2, int bias) {
-        if (c1 == null || c2 == null)
+        return diffBiased(c1, c2, bias, ColorMetric.RGB);
+    }
+
+    static boolean diffBiased(AnsiColor c1, AnsiColor c2, int bias, ColorMetric metric) {
+        if (c1 == null || c2 == null || bias < 0)
             return true;
-        return Math.sqrt(Math.pow(c1.r() - c2.r(), 2) + Math.pow(c1.g() - c2.g(), 2) + Math.pow(c1.b() - c2.b(), 2)) > bias;
+        int rgb1 = c1.r() << 16 | c1.g() << 8 | c1.b();
+        int rgb2 = c2.r() << 16 | c2.g() << 8 | c2.b();
+        return metric.distanceSq(rgb1, rgb2) > metric.squared(bias);
     }
 
     /**
@@ -346,12 +426,36 @@ public final class Anscapes {
         CYAN_BRIGHT(96, new Color(86, 255, 255)),
         WHITE_BRIGHT(97, new Color(255, 255, 255));
 
+        private static final Colors[] VALUES = values();
+
         private final int value;
         private final Color c;
+        private final String fg;
+        private final String bg;
 
         Colors(int value, Color c) {
             this.value = value;
             this.c = c;
+            this.fg = Anscapes.CSI + value + 'm';
+            this.bg = Anscapes.CSI + (value + 10) + 'm';
+        }
+
+        /**
+         * @param ordinal the color ordinal
+         * @return the color with this ordinal, without cloning {@link #values()}
+         */
+        public static Colors fromOrdinal(int ordinal) {
+            return VALUES[ordinal];
+        }
+
+        /**
+         * @return the rgb values of all colors, indexed by ordinal
+         */
+        static int[] rgbValues() {
+            int[] rgb = new int[VALUES.length];
+            for (int i = 0; i < VALUES.length; ++i)
+                rgb[i] = VALUES[i].c.getRGB() & 0xffffff;
+            return rgb;
         }
 
         @Override
@@ -376,12 +480,12 @@ public final class Anscapes {
 
         @Override
         public String fg() {
-            return Anscapes.CSI + value + 'm';
+            return fg;
         }
 
         @Override
         public String bg() {
-            return Anscapes.CSI + (value + 10) + 'm';
+            return bg;
         }
     }
 
@@ -48,4 +48,16 @@ public interface AnsiColor {
     default boolean diffBiased(AnsiColor c2, int bias) {
         return Anscapes.diffBiased(this, c2, bias);
     }
+
+    /**
+     * Check if colors are different enough based on bias.
+     *
+     * @param c2     the other color
+     * @param bias   the distance in the unit of the metric
+     * @param metric the distance used to compare colors
+     * @return if the colors are different enough
+     */
+    default boolean diffBiased(AnsiColor c2, int bias, ColorMetric metric) {
+        return Anscapes.diffBiased(this, c2, bias, metric);
+    }
 }
@@ -0,0 +1,129 @@
+package tech.guiyom.anscapes;
+
+/**
+ * Distance used to compare colors, when matching a palette or applying a bias.
+ * <p>
+ * Distances are integer and squared so they can be compared without a square root. Use {@link #squared(int)} to get
+ * a bias or a threshold expressed in the unit of the metric on the same scale.
+ */
+public enum ColorMetric {
+
+    /**
+     * Euclidean distance between the rgb components. Fast, but far from what the eye perceives.
+     */
+    RGB {
+        @Override
+        public int distanceSq(int rgb1, int rgb2) {
+            int dr = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+            int dg = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+            int db = (rgb1 & 0xff) - (rgb2 & 0xff);
+            return dr * dr + dg * dg + db * db;
+        }
+    },
+    /**
+     * "Redmean" weighted rgb distance, a cheap approximation of perceived differences.
+     * Distances are about 1.7 times the rgb ones.
+     */
+    REDMEAN {
+        @Override
+        public int distanceSq(int rgb1, int rgb2) {
+            int r1 = (rgb1 >> 16) & 0xff;
+            int r2 = (rgb2 >> 16) & 0xff;
+            int mean = (r1 + r2) >> 1;
+            int dr = r1 - r2;
+            int dg = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+            int db = (rgb1 & 0xff) - (rgb2 & 0xff);
+            return (((512 + mean) * dr * dr) >> 8) + 4 * dg * dg + (((767 - mean) * db * db) >> 8);
+        }
+    },
+    /**
+     * CIE76 delta E, the euclidean distance in the CIELAB color space. Distances are delta E.
+     * <p>
+     * Lab coordinates come from a table of colors quantized to 6 bits per channel, computed once on first use,
+     * with a precision of a quarter delta E.
+     */
+    LAB {
+        @Override
+        public int distanceSq(int rgb1, int rgb2) {
+            return labDistanceSq(LabTable.TABLE[NearestColorTable.index(rgb1)], LabTable.TABLE[NearestColorTable.index(rgb2)]);
+        }
+
+        @Override
+        public int squared(int distance) {
+            return distance * distance * LabTable.SCALE * LabTable.SCALE;
+        }
+    };
+
+    /**
+     * @param rgb1 a packed rgb int, alpha is ignored
+     * @param rgb2 a packed rgb int, alpha is ignored
+     * @return the squared distance between the two colors
+     */
+    public abstract int distanceSq(int rgb1, int rgb2);
+
+    /**
+     * @param distance a distance in the unit of this metric, e.g. a bias or a threshold
+     * @return the value to compare with {@link #distanceSq(int, int)}
+     */
+    public int squared(int distance) {
+        return distance * distance;
+    }
+
+    /**
+     * @param index a quantized color index, see {@link NearestColorTable#index(int)}
+     * @return the packed Lab coordinates of this color
+     */
+    static int lab(int index) {
+        return LabTable.TABLE[index];
+    }
+
+    /**
+     * @return the squared distance between packed Lab coordinates
+     */
+    static int labDistanceSq(int lab1, int lab2) {
+        int dl = (lab1 >>> 20) - (lab2 >>> 20);
+        int da = ((lab1 >> 10) & 0x3ff) - ((lab2 >> 10) & 0x3ff);
+        int db = (lab1 & 0x3ff) - (lab2 & 0x3ff);
+        return dl * dl + da * da + db * db;
+    }
+
+    /**
+     * Lab coordinates of the quantized colors, lazily built by the class loader.
+     * Each entry packs L, a + 128 and b + 128 on 10 bits each, in fixed point.
+     */
+    private static final class LabTable {
+
+        private static final int SCALE = 4;
+        private static final int[] TABLE = new int[1 << (NearestColorTable.CHANNEL_BITS * 3)];
+
+        static {
+            // sRGB to linear
+            double[] linear = new double[256];
+            for (int i = 0; i < 256; ++i) {
+                double c = i / 255.0;
+                linear[i] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+            }
+
+            for (int i = 0; i < TABLE.length; ++i) {
+                // Use the center of the quantized cell
+                double r = linear[((i >> 12) << 2) | 2];
+                double g = linear[(((i >> 6) & 0x3f) << 2) | 2];
+                double b = linear[((i & 0x3f) << 2) | 2];
+
+                // D65 white point
+                double fx = f((0.4124 * r + 0.3576 * g + 0.1805 * b) / 0.95047);
+                double fy = f(0.2126 * r + 0.7152 * g + 0.0722 * b);
+                double fz = f((0.0193 * r + 0.1192 * g + 0.9505 * b) / 1.08883);
+
+                int l = (int) Math.round((116 * fy - 16) * SCALE);
+                int a = (int) Math.round(500 * (fx - fy) * SCALE) + 128 * SCALE;
+                int bb = (int) Math.round(200 * (fy - fz) * SCALE) + 128 * SCALE;
+                TABLE[i] = l << 20 | a << 10 | bb;
+            }
+        }
+
+        private static double f(double t) {
+            return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+        }
+    }
+}
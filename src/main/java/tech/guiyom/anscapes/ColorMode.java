@@ -9,5 +9,9 @@ public enum ColorMode {
     /**
      * The full range of colors, not supported by all terminals
      */
-    RGB
+    RGB,
+    /**
+     * The 256 colors xterm palette, supported by most terminals and multiplexers
+     */
+    ANSI256
 }
@@ -0,0 +1,125 @@
+package tech.guiyom.anscapes;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed nearest color lookup for a fixed palette.
+ * Colors are quantized to 6 bits per channel (18 bits total) and each entry holds the index of the nearest
+ * palette color, so a lookup is a single array load. Tables are immutable once built and can be shared between threads.
+ */
+public final class NearestColorTable {
+
+    /**
+     * Bits kept per channel.
+     */
+    public static final int CHANNEL_BITS = 6;
+
+    private static final int SIZE = 1 << (CHANNEL_BITS * 3);
+
+    private static final Map<ColorMetric, ConcurrentMap<Integer, NearestColorTable>> ANSI_TABLES = new EnumMap<>(ColorMetric.class);
+
+    static {
+        for (ColorMetric metric : ColorMetric.values())
+            ANSI_TABLES.put(metric, new ConcurrentHashMap<>());
+    }
+
+    private final byte[] table;
+
+    /**
+     * Build a table for an arbitrary palette. Building is expensive, tables should be reused.
+     *
+     * @param palette   the palette colors as packed rgb ints, at most 256 of them
+     * @param threshold distance to evaluate a spot-on, see {@link Anscapes#findNearestColor(java.awt.Color, int)}
+     */
+    public NearestColorTable(int[] palette, int threshold) {
+        this(palette, threshold, ColorMetric.RGB);
+    }
+
+    /**
+     * Build a table for an arbitrary palette. Building is expensive, tables should be reused.
+     *
+     * @param palette   the palette colors as packed rgb ints, at most 256 of them
+     * @param threshold distance to evaluate a spot-on, in the unit of the metric
+     * @param metric    the distance used to match colors
+     */
+    public NearestColorTable(int[] palette, int threshold, ColorMetric metric) {
+
+        if (palette.length == 0 || palette.length > 256)
+            throw new IllegalArgumentException("Palette size should be between 1 and 256.");
+
+        this.table = new byte[SIZE];
+        int thresholdSq = threshold > 0 ? metric.squared(threshold) : 0;
+
+        // Lab coordinates are looked up once instead of for every pair
+        int[] lab = null;
+        if (metric == ColorMetric.LAB) {
+            lab = new int[palette.length];
+            for (int j = 0; j < palette.length; ++j)
+                lab[j] = ColorMetric.lab(index(palette[j]));
+        }
+
+        for (int i = 0; i < SIZE; ++i) {
+            // Use the center of the quantized cell
+            int rgb = ((i >> 12) << 2 | 2) << 16 | (((i >> 6) & 0x3f) << 2 | 2) << 8 | ((i & 0x3f) << 2 | 2);
+            int cellLab = lab == null ? 0 : ColorMetric.lab(i);
+
+            int closest = 0;
+            int closestDist = Integer.MAX_VALUE;
+            for (int j = 0; j < palette.length; ++j) {
+                int dist = lab == null ? metric.distanceSq(palette[j], rgb) : ColorMetric.labDistanceSq(lab[j], cellLab);
+
+                // Speedup, if low distance its a spot-on
+                if (dist < thresholdSq) {
+                    closest = j;
+                    break;
+                }
+
+                if (dist < closestDist) {
+                    closestDist = dist;
+                    closest = j;
+                }
+            }
+            table[i] = (byte) closest;
+        }
+    }
+
+    /**
+     * Get the shared table for the 16 {@link Anscapes.Colors}. Tables are lazily built once per threshold.
+     *
+     * @param threshold distance to evaluate a spot-on
+     * @return the shared table, indices are {@link Anscapes.Colors} ordinals
+     */
+    public static NearestColorTable ansi(int threshold) {
+        return ansi(threshold, ColorMetric.RGB);
+    }
+
+    /**
+     * Get the shared table for the 16 {@link Anscapes.Colors}. Tables are lazily built once per threshold and metric.
+     *
+     * @param threshold distance to evaluate a spot-on, in the unit of the metric
+     * @param metric    the distance used to match colors
+     * @return the shared table, indices are {@link Anscapes.Colors} ordinals
+     */
+    public static NearestColorTable ansi(int threshold, ColorMetric metric) {
+        return ANSI_TABLES.get(metric).computeIfAbsent(threshold, t -> new NearestColorTable(Anscapes.Colors.rgbValues(), t, metric));
+    }
+
+    /**
+     * @param rgb a packed rgb int, alpha is ignored
+     * @return the index of this color in the table
+     */
+    public static int index(int rgb) {
+        return ((rgb >> 6) & 0x3f000) | ((rgb >> 4) & 0xfc0) | ((rgb >> 2) & 0x3f);
+    }
+
+    /**
+     * @param rgb a packed rgb int, alpha is ignored
+     * @return the palette index of the nearest color
+     */
+    public int nearest(int rgb) {
+        return table[index(rgb)] & 0xff;
+    }
+}
@@ -0,0 +1,131 @@
+package tech.guiyom.anscapes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The rgb values a terminal actually displays for its color codes, e.g. taken from an exported terminal theme.
+ * Color indices are the terminal codes : ordinals of {@link Anscapes.Colors} for 16 colors, 256 colors codes otherwise.
+ * <p>
+ * Nearest color lookups go through a {@link NearestColorTable}, built once per metric on first use and shared.
+ * Palettes are immutable and can be shared between threads.
+ */
+public final class Palette {
+
+    /**
+     * The default rgb values of {@link Anscapes.Colors}.
+     */
+    public static final Palette ANSI = new Palette(Anscapes.Colors.rgbValues());
+
+    /**
+     * The xterm 256 colors palette, see {@link Anscapes#rgb256(int)}.
+     */
+    public static final Palette XTERM256 = xterm256(ANSI);
+
+    private final int[] colors;
+    private final ConcurrentMap<ColorMetric, NearestColorTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * @param colors the packed rgb values indexed by color code, between 1 and 256 of them
+     */
+    public Palette(int... colors) {
+
+        if (colors.length == 0 || colors.length > 256)
+            throw new IllegalArgumentException("Palette size should be between 1 and 256.");
+
+        this.colors = new int[colors.length];
+        for (int i = 0; i < colors.length; ++i)
+            this.colors[i] = colors[i] & 0xffffff;
+    }
+
+    /**
+     * Read a list of colors, like {@code #1d1f21 #cc6666 0xb5bd68 f0c674}.
+     * Colors are hexadecimal rgb values, separated by whitespace, commas or semicolons.
+     *
+     * @param text the colors, in code order
+     * @return the palette
+     */
+    public static Palette parse(CharSequence text) {
+
+        String[] tokens = text.toString().trim().split("[\\s,;]+");
+        int[] colors = new int[tokens.length];
+
+        for (int i = 0; i < tokens.length; ++i) {
+            String token = tokens[i];
+            if (token.startsWith("#"))
+                token = token.substring(1);
+            else if (token.startsWith("0x") || token.startsWith("0X"))
+                token = token.substring(2);
+
+            if (token.length() != 6)
+                throw new IllegalArgumentException("Invalid color : " + tokens[i]);
+            try {
+                colors[i] = Integer.parseInt(token, 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid color : " + tokens[i], e);
+            }
+        }
+        return new Palette(colors);
+    }
+
+    /**
+     * Build a 256 colors palette from the 16 colors of a theme, the color cube and the grayscale ramp being standard.
+     *
+     * @param ansi the 16 colors of the theme
+     * @return the 256 colors palette
+     */
+    public static Palette xterm256(Palette ansi) {
+
+        if (ansi.size() != 16)
+            throw new IllegalArgumentException("Expected 16 colors, got " + ansi.size() + '.');
+
+        int[] colors = new int[256];
+        System.arraycopy(ansi.colors, 0, colors, 0, 16);
+        for (int i = 16; i < 256; ++i)
+            colors[i] = Anscapes.rgb256(i);
+        return new Palette(colors);
+    }
+
+    /**
+     * @return the number of colors
+     */
+    public int size() {
+        return colors.length;
+    }
+
+    /**
+     * @param index the color code
+     * @return the packed rgb value of this color
+     */
+    public int rgb(int index) {
+        return colors[index];
+    }
+
+    /**
+     * @param metric the distance used to match colors
+     * @return the shared lookup table of this palette for the metric
+     */
+    public NearestColorTable table(ColorMetric metric) {
+        return tables.computeIfAbsent(metric, m -> new NearestColorTable(colors, 0, m));
+    }
+
+    /**
+     * @param rgb    a packed rgb int, alpha is ignored
+     * @param metric the distance used to match colors
+     * @return the code of the nearest color
+     */
+    public int nearest(int rgb, ColorMetric metric) {
+        return table(metric).nearest(rgb);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Palette && Arrays.equals(colors, ((Palette) obj).colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(colors);
+    }
+}
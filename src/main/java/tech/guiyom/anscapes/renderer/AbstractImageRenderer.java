@@ -1,11 +1,20 @@
 package tech.guiyom.anscapes.renderer;
 
+import tech.guiyom.anscapes.ColorMetric;
 import tech.guiyom.anscapes.ColorMode;
 
+import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 
 public abstract class AbstractImageRenderer implements ImageRenderer {
@@ -18,61 +27,574 @@ public abstract class AbstractImageRenderer implements ImageRenderer {
             CHAR_BOTTOM = '\u2584',
             CHAR_BLANK = ' ';
 
+    /**
+     * Color of both halves of a cell that must not be drawn, see {@link #setAlphaCutoff(int)}.
+     */
+    static final int TRANSPARENT = Integer.MIN_VALUE;
+
     // Target size
     protected final int targetWidth;
     protected final int targetHeight;
-    protected final CharBuffer outputBuffer;
     // Color mode
     protected ColorMode colorMode;
     protected int[] resizeBuffer;
+    private Scaling scaling = Scaling.NEAREST;
+    private AreaScaler areaScaler;
+    // Squared distance under which two colors are considered equal, and how it is measured
+    private int bias;
+    private int biasSq;
+    private ColorMetric metric = ColorMetric.RGB;
+    // Tunes the bias from the output size, null for a fixed bias
+    private BiasController biasController;
+    // Compress runs of identical cells with REP
+    boolean repeat = false;
+    // Cells whose pixels are both less opaque than this are not drawn
+    private int alphaCutoff = 0;
+    // Blends translucent pixels over the background, null to ignore alpha
+    private Compositor compositor;
+    // Null when not dithering
+    private OrderedDither dither;
+    // Null when not diffusing errors, takes over ordered dithering
+    private ErrorDiffuser diffuser;
+    private final CellEncoder encoder;
+    private final Scratch scratch = new Scratch();
+    // Output, rows are encoded to UTF-8 in the chunk then written to one of the sinks, allocated on first use
+    private byte[] chunk;
+    // Output of the char based API, rows are encoded to chars directly, allocated on first use
+    private char[] chars;
+    private BufferSizing charSizing;
+    private final ByteSink.ChannelSink channelSink = new ByteSink.ChannelSink();
+    private final ByteSink.StreamSink streamSink = new ByteSink.StreamSink();
+    // Parallel rendering, null when rendering on the caller thread
+    private Executor executor;
+    private Segment[] segments;
 
     protected AbstractImageRenderer(ColorMode cmode, int targetWidth, int targetHeight) {
         this.colorMode = cmode;
         this.targetWidth = targetWidth;
         this.targetHeight = targetHeight;
         this.resizeBuffer = new int[targetWidth * targetHeight];
-
-        // Scaling the buffer for the worst case to prevent further array copies.
-        this.outputBuffer = CharBuffer.allocate(39 * targetHeight * targetWidth + targetHeight * 5);
-        this.outputBuffer.mark();
-    }
-
-    protected static int[] bytesToARGB(ByteBuffer buf, int width, int height) {
-        int[] data = new int[width * height];
-        for (int x = 0; x < width; ++x)
-            for (int y = 0; y < height; ++y) {
-                int index = y * width + x * 4;
-                int b = buf.get(index) & 0xff;
-                int g = buf.get(index + 1) & 0xff;
-                int r = buf.get(index + 2) & 0xff;
-                int a = buf.get(index + 3) & 0xff;
-                if (a > 0x00 && a < 0xff) {
-                    int halfa = a >> 1;
-                    r = (r >= a) ? 0xff : (r * 0xff + halfa) / a;
-                    g = (g >= a) ? 0xff : (g * 0xff + halfa) / a;
-                    b = (b >= a) ? 0xff : (b * 0xff + halfa) / a;
-                }
-                data[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
-        return data;
+        this.encoder = new CellEncoder(this, targetWidth);
     }
 
     static void resize(int[] pixels, int originalWidth, int originalHeight, int[] out, int targetWidth, int targetHeight) {
+        resize(PixelSource.of(pixels, originalWidth, originalHeight), out, targetWidth, targetHeight, 0, targetHeight, new Scratch());
+    }
+
+    /**
+     * Nearest neighbour resize of the target rows in [fromRow, toRow[.
+     */
+    static void resize(PixelSource source, int[] out, int targetWidth, int targetHeight, int fromRow, int toRow, Scratch scratch) {
         // EDIT: added +1 to account for an early rounding problem
-        int x_ratio = ((originalWidth << 16) / targetWidth) + 1;
-        int y_ratio = ((originalHeight << 16) / targetHeight) + 1;
+        int x_ratio = ((source.width << 16) / targetWidth) + 1;
+        int y_ratio = ((source.height << 16) / targetHeight) + 1;
         //int x_ratio = (int)((w1<<16)/w2) ;
         //int y_ratio = (int)((h1<<16)/h2) ;
         int x2, y2;
-        for (int i = 0; i < targetHeight; i++) {
+        for (int i = fromRow; i < toRow; i++) {
+            y2 = ((i * y_ratio) >> 16);
+            int[] row = source.row(y2, scratch);
+            int offset = source.offset(y2);
             for (int j = 0; j < targetWidth; j++) {
                 x2 = ((j * x_ratio) >> 16);
-                y2 = ((i * y_ratio) >> 16);
-                out[(i * targetWidth) + j] = pixels[(y2 * originalWidth) + x2];
+                out[(i * targetWidth) + j] = row[offset + x2];
             }
         }
     }
 
+    /**
+     * Convert a row of pixels to the colors this renderer works with.
+     * Those are renderer specific but must be positive ints, e.g. packed rgb colors or palette indices.
+     *
+     * @param pixels       the pixel data, in ARGB
+     * @param offset       the first pixel to convert
+     * @param colors       the converted colors
+     * @param colorsOffset where to write the first converted color
+     * @param length       the number of pixels to convert
+     */
+    protected abstract void quantizeRow(int[] pixels, int offset, int[] colors, int colorsOffset, int length);
+
+    /**
+     * Write the parameters setting the foreground color, without the CSI prefix and the final {@code m}
+     * so they can be combined with the background ones in a single sequence.
+     *
+     * @param out   the output buffer
+     * @param pos   the position to write at
+     * @param color a color given by {@link #quantizeRow(int[], int, int[], int, int)}
+     * @return the new position
+     */
+    protected abstract int putFg(byte[] out, int pos, int color);
+
+    /**
+     * Write the parameters setting the background color, without the CSI prefix and the final {@code m}.
+     *
+     * @param out   the output buffer
+     * @param pos   the position to write at
+     * @param color a color given by {@link #quantizeRow(int[], int, int[], int, int)}
+     * @return the new position
+     */
+    protected abstract int putBg(byte[] out, int pos, int color);
+
+    /**
+     * Get the rgb value actually displayed for a color, used to measure the quantization error when diffusing it.
+     * Renderers working with a palette must override it, the default being for colors that are packed rgb ints.
+     *
+     * @param color a color given by {@link #quantizeRow(int[], int, int[], int, int)}
+     * @return the packed rgb value
+     */
+    protected int rgb(int color) {
+        return color & 0xffffff;
+    }
+
+    /**
+     * Set the distance under which two colors are considered equal, only meaningful for rgb colors.
+     *
+     * @param bias the color distance
+     */
+    protected void setBias(int bias) {
+        setBias(bias, ColorMetric.RGB);
+    }
+
+    /**
+     * Set the distance under which two colors are considered equal, only meaningful for rgb colors.
+     *
+     * @param bias   the color distance, in the unit of the metric
+     * @param metric the distance used to compare colors
+     */
+    protected void setBias(int bias, ColorMetric metric) {
+        this.metric = metric;
+        this.bias = bias;
+        this.biasSq = metric.squared(bias);
+    }
+
+    /**
+     * @return the distance under which two colors are considered equal, the one of the next frame with a controller
+     */
+    public int getBias() {
+        return bias;
+    }
+
+    /**
+     * Let a controller pick the bias of every frame from the size of the previous ones,
+     * for this renderer as well as the {@link FrameDiffRenderer} and {@link VideoPipeline} using it.
+     *
+     * @param controller the controller, null to keep the current bias from now on
+     */
+    protected void setBiasController(BiasController controller) {
+        this.biasController = controller;
+        if (controller != null)
+            setBias(controller.getBias(), metric);
+    }
+
+    public BiasController getBiasController() {
+        return biasController;
+    }
+
+    /**
+     * Called on the rendering thread once a frame is encoded.
+     *
+     * @param bytes the frame size
+     */
+    final void rendered(int bytes) {
+        if (biasController != null)
+            setBias(biasController.update(bytes), metric);
+    }
+
+    /**
+     * Same as {@link #rendered(int)} for the char based API.
+     *
+     * @param out    the frame
+     * @param length the number of chars of the frame
+     */
+    final void rendered(char[] out, int length) {
+        if (biasController != null)
+            rendered(Sgr.length(out, 0, length));
+    }
+
+    /**
+     * Integer equivalent of {@link tech.guiyom.anscapes.AnsiColor#diffBiased(tech.guiyom.anscapes.AnsiColor, int, ColorMetric)}.
+     *
+     * @param prev  the previous color or -1 if none
+     * @param color the new color
+     * @return if the colors are different enough
+     */
+    final boolean differs(int prev, int color) {
+        if (prev < 0)
+            return true;
+        if (prev == color)
+            return false;
+        if (biasSq == 0)
+            return true;
+        if (metric != ColorMetric.RGB)
+            return metric.distanceSq(prev, color) > biasSq;
+        int dr = ((prev >> 16) & 0xff) - ((color >> 16) & 0xff);
+        int dg = ((prev >> 8) & 0xff) - ((color >> 8) & 0xff);
+        int db = (prev & 0xff) - (color & 0xff);
+        return dr * dr + dg * dg + db * db > biasSq;
+    }
+
+    /**
+     * Quantize the two pixel rows of a terminal row, blending them over the background and dithering them if needed.
+     * Cells too transparent to be drawn are marked {@link #TRANSPARENT}.
+     *
+     * @param pixels       the pixel data, already at the target size
+     * @param row          the terminal row
+     * @param encoder      the encoder of the current thread
+     * @param upper        receives the upper pixels colors
+     * @param lower        receives the lower pixels colors
+     * @param colorsOffset where to write the colors
+     */
+    final void quantizeCells(int[] pixels, int row, CellEncoder encoder, int[] upper, int[] lower, int colorsOffset) {
+
+        final int offset = row * 2 * targetWidth;
+        final Compositor compositor = this.compositor;
+        final ErrorDiffuser diffuser = this.diffuser;
+        final OrderedDither dither = diffuser == null ? this.dither : null;
+
+        int[] src = pixels;
+        int srcOffset = offset;
+        if (compositor != null || dither != null) {
+            // Prepare both rows while they are hot, quantizing them right after
+            int[] prepared = encoder.prepared();
+            if (compositor != null) {
+                compositor.blend(src, srcOffset, prepared, 0, targetWidth * 2);
+                src = prepared;
+                srcOffset = 0;
+            }
+            if (dither != null) {
+                dither.apply(src, srcOffset, prepared, 0, targetWidth, row * 2);
+                dither.apply(src, srcOffset + targetWidth, prepared, targetWidth, targetWidth, row * 2 + 1);
+                src = prepared;
+                srcOffset = 0;
+            }
+        }
+        if (diffuser != null) {
+            // Rows are always quantized in order, starting a new frame
+            if (row == 0)
+                diffuser.reset();
+            diffuser.apply(this, src, srcOffset, upper, colorsOffset, row * 2);
+            diffuser.apply(this, src, srcOffset + targetWidth, lower, colorsOffset, row * 2 + 1);
+        } else {
+            quantizeRow(src, srcOffset, upper, colorsOffset, targetWidth);
+            quantizeRow(src, srcOffset + targetWidth, lower, colorsOffset, targetWidth);
+        }
+
+        if (alphaCutoff == 0)
+            return;
+
+        for (int x = 0; x < targetWidth; ++x) {
+            boolean upperTransparent = pixels[offset + x] >>> 24 < alphaCutoff;
+            boolean lowerTransparent = pixels[offset + targetWidth + x] >>> 24 < alphaCutoff;
+            int i = colorsOffset + x;
+            if (upperTransparent && lowerTransparent) {
+                upper[i] = TRANSPARENT;
+                lower[i] = TRANSPARENT;
+            } else if (upperTransparent) {
+                upper[i] = lower[i];
+            } else if (lowerTransparent) {
+                lower[i] = upper[i];
+            }
+        }
+    }
+
+    /**
+     * Encode a single terminal row, made of the pixel rows {@code 2 * row} and {@code 2 * row + 1}.
+     * Colors are reset at the start of every row so rows can be encoded in any order or concurrently.
+     *
+     * @param pixels  the pixel data, already at the target size
+     * @param row     the terminal row to encode
+     * @param encoder the encoder of the current thread
+     * @param out     the output buffer
+     * @param pos     the position to write at
+     * @return the new position
+     */
+    private int renderRow(int[] pixels, int row, CellEncoder encoder, byte[] out, int pos) {
+
+        quantizeCells(pixels, row, encoder, encoder.upper, encoder.lower, 0);
+        pos = encodeRow(encoder.upper, encoder.lower, 0, encoder, out, pos);
+
+        pos = Sgr.put(out, pos, Sgr.RESET);
+        return Sgr.put(out, pos, Sgr.LINE_SEPARATOR);
+    }
+
+    /**
+     * Same as {@link #renderRow(int[], int, CellEncoder, byte[], int)} for the char based API.
+     *
+     * @return the new position
+     */
+    private int renderRow(int[] pixels, int row, CellEncoder encoder, char[] out, int pos) {
+
+        quantizeCells(pixels, row, encoder, encoder.upper, encoder.lower, 0);
+        pos = encodeRow(encoder.upper, encoder.lower, 0, encoder, out, pos);
+
+        pos = Sgr.put(out, pos, Sgr.RESET);
+        return Sgr.put(out, pos, Sgr.LINE_SEPARATOR);
+    }
+
+    /**
+     * Encode the quantized cells of a terminal row, starting from unknown colors. Colors are left set at the end.
+     *
+     * @param upper   the upper pixels colors
+     * @param lower   the lower pixels colors
+     * @param offset  the colors of the first cell
+     * @param encoder the encoder of the current thread
+     * @param out     the output buffer
+     * @param pos     the position to write at
+     * @return the new position
+     */
+    final int encodeRow(int[] upper, int[] lower, int offset, CellEncoder encoder, byte[] out, int pos) {
+
+        encoder.reset();
+        // Transparent cells waiting to be skipped
+        int skipped = 0;
+        for (int i = offset; i < offset + targetWidth; ++i) {
+            if (upper[i] == TRANSPARENT) {
+                ++skipped;
+                continue;
+            }
+            if (skipped > 0) {
+                pos = encoder.flush(out, pos);
+                pos = Sgr.putMoveRight(out, pos, skipped);
+                skipped = 0;
+            }
+            pos = encoder.cell(out, pos, upper[i], lower[i]);
+        }
+        return encoder.flush(out, pos);
+    }
+
+    /**
+     * Same as {@link #encodeRow(int[], int[], int, CellEncoder, byte[], int)} for the char based API.
+     *
+     * @return the new position
+     */
+    private int encodeRow(int[] upper, int[] lower, int offset, CellEncoder encoder, char[] out, int pos) {
+
+        encoder.reset();
+        // Transparent cells waiting to be skipped
+        int skipped = 0;
+        for (int i = offset; i < offset + targetWidth; ++i) {
+            if (upper[i] == TRANSPARENT) {
+                ++skipped;
+                continue;
+            }
+            if (skipped > 0) {
+                pos = encoder.flush(out, pos);
+                pos = Sgr.putMoveRight(out, pos, skipped);
+                skipped = 0;
+            }
+            pos = encoder.cell(out, pos, upper[i], lower[i]);
+        }
+        return encoder.flush(out, pos);
+    }
+
+    /**
+     * @return the maximum number of bytes a single cell can take
+     */
+    protected int maxCellLength() {
+        // CSI 38;2;255;255;255;48;2;255;255;255m and the char
+        return 2 + 16 + 1 + 16 + 1 + 3;
+    }
+
+    /**
+     * @return the maximum number of bytes a single terminal row can take
+     */
+    protected int maxRowLength() {
+        return maxCellLength() * targetWidth + Sgr.RESET.length + Sgr.LINE_SEPARATOR.length;
+    }
+
+    /**
+     * Output buffers start from this length and grow when a frame doesn't fit. Each terminal row covers two pixel rows,
+     * and cells take about half their maximum length on average, most of them sharing a color with a neighbour.
+     *
+     * @return the expected number of bytes of a frame
+     */
+    int estimatedLength() {
+        return targetHeight / 2 * (maxCellLength() / 2 * targetWidth + Sgr.RESET.length + Sgr.LINE_SEPARATOR.length);
+    }
+
+    /**
+     * Memory held by this renderer for frames of its target size : the resize buffer, the output buffers and
+     * the buffers of the parallel segments, but not the small per row ones.
+     *
+     * @return the number of bytes retained between two frames
+     */
+    public long getRetainedBytes() {
+        long bytes = 4L * resizeBuffer.length + scratch.retainedBytes();
+        if (chunk != null)
+            bytes += chunk.length;
+        if (chars != null)
+            bytes += 2L * chars.length;
+        if (segments != null) {
+            for (Segment segment : segments)
+                bytes += segment.retainedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Release the output buffers, e.g. when the renderer won't be used for a while. They are allocated again,
+     * from the estimated frame length, by the next frame.
+     */
+    public void releaseBuffers() {
+        chunk = null;
+        chars = null;
+        charSizing = null;
+        if (segments != null) {
+            for (Segment segment : segments)
+                segment.release();
+        }
+    }
+
+    /**
+     * Render rows in parallel. Rows are split in contiguous segments, each one resized and encoded in its own buffer
+     * by a task submitted to the executor. Segments are then written one after the other to the output.
+     * Segment buffers are reused for every frame, growing when a segment doesn't fit.
+     *
+     * @param executor the executor running the tasks, typically {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     *                 or null to render on the caller thread
+     * @param segments the number of segments to split a frame into, usually the executor parallelism
+     */
+    public void setExecutor(Executor executor, int segments) {
+        int rows = targetHeight / 2;
+        if (executor == null || rows < 2 || segments < 2) {
+            this.executor = null;
+            this.segments = null;
+            return;
+        }
+        segments = Math.min(segments, rows);
+        this.executor = executor;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; ++i)
+            this.segments[i] = new Segment(rows * i / segments, rows * (i + 1) / segments);
+    }
+
+    /**
+     * Same as {@link #setExecutor(Executor, int)} with one segment per available processor.
+     *
+     * @param executor the executor running the tasks, or null to render on the caller thread
+     */
+    public void setExecutor(Executor executor) {
+        setExecutor(executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param scaling the algorithm used to resize images to the target size
+     */
+    public void setScaling(Scaling scaling) {
+        this.scaling = scaling;
+        if (scaling == Scaling.AREA && areaScaler == null)
+            areaScaler = new AreaScaler(targetWidth, targetHeight);
+    }
+
+    public Scaling getScaling() {
+        return scaling;
+    }
+
+    /**
+     * Compress runs of identical cells within a row : the glyph is printed once then repeated with {@code CSI n b}
+     * when it is shorter. Disabled by default since some terminals don't support REP.
+     *
+     * @param repeat whether to use REP sequences
+     */
+    public void setRepeat(boolean repeat) {
+        this.repeat = repeat;
+    }
+
+    public boolean isRepeat() {
+        return repeat;
+    }
+
+    /**
+     * Skip the cells whose two pixels are less opaque than the cutoff : the cursor is moved over them so whatever
+     * is already displayed stays visible. When only one pixel of a cell is transparent, it takes the color of the other.
+     *
+     * @param alphaCutoff the alpha value between 0 and 256 under which a pixel is transparent, 0 to draw every cell
+     */
+    public void setAlphaCutoff(int alphaCutoff) {
+        if (alphaCutoff < 0 || alphaCutoff > 256)
+            throw new IllegalArgumentException("Alpha cutoff should be between 0 and 256.");
+        this.alphaCutoff = alphaCutoff;
+    }
+
+    public int getAlphaCutoff() {
+        return alphaCutoff;
+    }
+
+    /**
+     * Blend translucent pixels over a background color before quantizing them. Pixels are otherwise used as if they
+     * were opaque. Cells skipped because of {@link #setAlphaCutoff(int)} are not drawn at all.
+     *
+     * @param background the background color, null to ignore alpha
+     */
+    public void setBackground(Color background) {
+        this.compositor = background == null ? null : new Compositor(background.getRGB());
+    }
+
+    /**
+     * @return the background color translucent pixels are blended over, null if alpha is ignored
+     */
+    public Color getBackground() {
+        return compositor == null ? null : new Color(compositor.background());
+    }
+
+    /**
+     * Offset pixels with an ordered dithering pattern before quantizing them, to trade banding for a fine pattern.
+     * Only useful with a limited palette, the amplitude should be about the distance between neighbouring colors.
+     *
+     * @param amplitude the spread of the pattern, in channel values, 0 to disable dithering
+     */
+    protected void setDithering(int amplitude) {
+        if (amplitude < 0 || amplitude > 255)
+            throw new IllegalArgumentException("Dithering amplitude should be between 0 and 255.");
+        this.dither = amplitude == 0 ? null : new OrderedDither(amplitude);
+    }
+
+    /**
+     * @return the dithering amplitude, 0 when disabled
+     */
+    public int getDithering() {
+        return dither == null ? 0 : dither.amplitude();
+    }
+
+    /**
+     * Diffuse the quantization error of every pixel over its neighbours, the best quality for still images.
+     * It takes over ordered dithering. Each row depending on the previous ones, frames are rendered on the caller
+     * thread even with an executor, and small changes in a video may ripple through the rest of the frame.
+     * Error rows are allocated here and reused for every frame.
+     *
+     * @param diffusion the kernel, null to disable error diffusion
+     */
+    protected void setDiffusion(Diffusion diffusion) {
+        if (diffusion == null)
+            this.diffuser = null;
+        else if (this.diffuser == null || this.diffuser.diffusion() != diffusion)
+            this.diffuser = new ErrorDiffuser(diffusion, targetWidth);
+    }
+
+    /**
+     * @return the error diffusion kernel, null when disabled
+     */
+    public Diffusion getDiffusion() {
+        return diffuser == null ? null : diffuser.diffusion();
+    }
+
+    /**
+     * @return everything the output depends on besides the pixels, to be compared with equals
+     * @see RenderCache
+     */
+    Object parameters() {
+        return Arrays.asList(getClass(), colorMode, targetWidth, targetHeight, bias, metric, scaling, repeat, alphaCutoff,
+                compositor == null ? null : compositor.background(), getDithering(), getDiffusion(), colorMatching());
+    }
+
+    /**
+     * @return what the nearest color lookup of the renderer depends on, to be compared with equals,
+     * null if it doesn't use one
+     */
+    Object colorMatching() {
+        return null;
+    }
+
     public int getTargetWidth() {
         return targetWidth;
     }
@@ -94,17 +616,263 @@ public abstract class AbstractImageRenderer implements ImageRenderer {
      * @param originalHeight the original pixel array height
      */
     protected void resize(int[] pixels, int originalWidth, int originalHeight) {
-        resize(pixels, originalWidth, originalHeight, resizeBuffer, targetWidth, targetHeight);
+        resize(PixelSource.of(pixels, originalWidth, originalHeight));
+    }
+
+    /**
+     * Resize pixels to the target dimensions into the resize buffer.
+     */
+    void resize(PixelSource source) {
+        resize(source, resizeBuffer, scratch);
+    }
+
+    /**
+     * Resize pixels to the target dimensions into any buffer.
+     *
+     * @param source  the pixels
+     * @param out     receives the resized pixels
+     * @param scratch the buffers of the current thread
+     */
+    void resize(PixelSource source, int[] out, Scratch scratch) {
+        prepareResize(source);
+        resizeRows(source, out, 0, targetHeight, scratch);
+    }
+
+    /**
+     * @return if the source can't be used as is
+     */
+    private boolean needsResize(PixelSource source) {
+        return source.width != targetWidth || source.height != targetHeight || source.direct() == null;
+    }
+
+    /**
+     * Must be called on the rendering thread before any call to {@link #resizeRows(PixelSource, int[], int, int, Scratch)}.
+     */
+    private void prepareResize(PixelSource source) {
+        if (scaling == Scaling.AREA)
+            areaScaler.update(source.width, source.height);
+    }
+
+    /**
+     * Resize only the target rows in [fromRow, toRow[.
+     */
+    private void resizeRows(PixelSource source, int[] out, int fromRow, int toRow, Scratch scratch) {
+        if (scaling == Scaling.AREA) {
+            areaScaler.resize(source, out, fromRow, toRow, scratch);
+        } else {
+            resize(source, out, targetWidth, targetHeight, fromRow, toRow, scratch);
+        }
+    }
+
+    @Override
+    public void render(int[] data, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
+        render(PixelSource.of(data, originalWidth, originalHeight), resultConsumer);
+    }
+
+    @Override
+    public void render(int[] data, int originalWidth, int originalHeight, WritableByteChannel channel) throws IOException {
+        render(PixelSource.of(data, originalWidth, originalHeight), channel);
+    }
+
+    @Override
+    public void render(int[] data, int originalWidth, int originalHeight, OutputStream out) throws IOException {
+        render(PixelSource.of(data, originalWidth, originalHeight), out);
+    }
+
+    @Override
+    public void render(BufferedImage image, WritableByteChannel channel) throws IOException {
+        render(source(image), channel);
+    }
+
+    @Override
+    public void render(BufferedImage image, OutputStream out) throws IOException {
+        render(source(image), out);
+    }
+
+    @Override
+    public void render(ByteBuffer buf, PixelFormat format, int originalWidth, int originalHeight, int stride, WritableByteChannel channel) throws IOException {
+        render(PixelSource.of(buf, format, originalWidth, originalHeight, stride), channel);
+    }
+
+    /**
+     * Render from any pixel source to chars, the same way as to bytes.
+     */
+    void render(PixelSource source, BiConsumer<char[], Integer> resultConsumer) {
+
+        if (needsResize(source))
+            prepareResize(source);
+        if (chars == null) {
+            charSizing = new BufferSizing(Math.max(estimatedLength(), maxRowLength()));
+            chars = new char[charSizing.estimate()];
+        }
+
+        int pos = 0;
+        // Error diffusion needs rows in order
+        if (executor == null || diffuser != null) {
+            // A row never takes more chars than bytes
+            final int rowLength = maxRowLength();
+            for (int row = 0; row < targetHeight / 2; ++row) {
+                if (pos + rowLength > chars.length)
+                    chars = Arrays.copyOf(chars, BufferSizing.grow(chars.length, pos + rowLength));
+                pos = renderRows(source, row, row + 1, encoder, scratch, chars, pos);
+            }
+        } else {
+            renderSegments(source, true);
+            for (Segment segment : segments) {
+                if (pos + segment.length > chars.length)
+                    chars = Arrays.copyOf(chars, BufferSizing.grow(chars.length, pos + segment.length));
+                System.arraycopy(segment.chars, 0, chars, pos, segment.length);
+                pos += segment.length;
+                segment.written();
+            }
+        }
+        rendered(chars, pos);
+        resultConsumer.accept(chars, pos);
+
+        int capacity = charSizing.used(chars.length, pos);
+        if (capacity != chars.length)
+            chars = new char[capacity];
+    }
+
+    void render(PixelSource source, WritableByteChannel channel) throws IOException {
+        channelSink.setChannel(channel);
+        try {
+            render(source, channelSink);
+        } finally {
+            channelSink.setChannel(null);
+        }
+    }
+
+    void render(PixelSource source, OutputStream out) throws IOException {
+        streamSink.setStream(out);
+        try {
+            render(source, streamSink);
+        } finally {
+            streamSink.setStream(null);
+        }
+    }
+
+    /**
+     * Render from any pixel source to any sink. Rows are encoded in a chunk written to the sink when full.
+     */
+    private void render(PixelSource source, ByteSink sink) throws IOException {
+
+        if (needsResize(source))
+            prepareResize(source);
+
+        int length = 0;
+        // Error diffusion needs rows in order
+        if (executor == null || diffuser != null) {
+            final int rowLength = maxRowLength();
+            // Small frames fit in a single chunk
+            if (chunk == null)
+                chunk = new byte[Math.max(Math.min(ByteSink.CHUNK_SIZE, estimatedLength()), rowLength)];
+            int pos = 0;
+            for (int row = 0; row < targetHeight / 2; ++row) {
+                if (pos + rowLength > chunk.length) {
+                    sink.write(chunk, 0, pos);
+                    length += pos;
+                    pos = 0;
+                }
+                pos = renderRows(source, row, row + 1, encoder, scratch, chunk, pos);
+            }
+            sink.write(chunk, 0, pos);
+            length += pos;
+        } else {
+            renderSegments(source, false);
+            for (Segment segment : segments) {
+                sink.write(segment.buffer, 0, segment.length);
+                length += segment.length;
+                segment.written();
+            }
+        }
+        sink.flush();
+        rendered(length);
+    }
+
+    /**
+     * Resize if needed then encode the terminal rows in [fromRow, toRow[.
+     *
+     * @return the new position
+     */
+    private int renderRows(PixelSource source, int fromRow, int toRow, CellEncoder encoder, Scratch scratch, byte[] out, int pos) {
+        int[] data = pixels(source, fromRow, toRow, scratch);
+        for (int row = fromRow; row < toRow; ++row)
+            pos = renderRow(data, row, encoder, out, pos);
+        return pos;
+    }
+
+    /**
+     * Same as {@link #renderRows(PixelSource, int, int, CellEncoder, Scratch, byte[], int)} for the char based API.
+     *
+     * @return the new position
+     */
+    private int renderRows(PixelSource source, int fromRow, int toRow, CellEncoder encoder, Scratch scratch, char[] out, int pos) {
+        int[] data = pixels(source, fromRow, toRow, scratch);
+        for (int row = fromRow; row < toRow; ++row)
+            pos = renderRow(data, row, encoder, out, pos);
+        return pos;
+    }
+
+    /**
+     * Resize the terminal rows in [fromRow, toRow[ if needed.
+     *
+     * @return the pixels at the target size
+     */
+    private int[] pixels(PixelSource source, int fromRow, int toRow, Scratch scratch) {
+        if (!needsResize(source))
+            return source.direct();
+        resizeRows(source, resizeBuffer, fromRow * 2, Math.min(toRow * 2, targetHeight), scratch);
+        return resizeBuffer;
+    }
+
+    /**
+     * @param chars whether segments are encoded to chars rather than bytes
+     */
+    private void renderSegments(PixelSource source, boolean chars) {
+
+        CountDownLatch latch = new CountDownLatch(segments.length);
+        for (Segment segment : segments) {
+            segment.prepare(source, latch, chars);
+            try {
+                executor.execute(segment);
+            } catch (RejectedExecutionException e) {
+                // Shut down or saturated executor, the latch must still be counted down
+                segment.run();
+            }
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering", e);
+        }
+
+        for (Segment segment : segments) {
+            if (segment.error != null)
+                throw new IllegalStateException("Failed to render rows " + segment.fromRow + " to " + segment.toRow, segment.error);
+        }
     }
 
+    /**
+     * Pixels are ARGB ints in the buffer byte order, i.e. {@link PixelFormat#ARGB} for big endian buffers
+     * and {@link PixelFormat#BGRA} for little endian ones.
+     */
     @Override
-    public void render(ByteBuffer buf, int originalWidth, int originalHeight, BiConsumer<char[], Integer> renderConsumer) {
-        render(buf.asIntBuffer(), originalWidth, originalHeight, renderConsumer);
+    public void render(ByteBuffer buf, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
+        PixelFormat format = buf.order() == ByteOrder.BIG_ENDIAN ? PixelFormat.ARGB : PixelFormat.BGRA;
+        render(buf, format, originalWidth, originalHeight, originalWidth * 4, resultConsumer);
+    }
+
+    @Override
+    public void render(ByteBuffer buf, PixelFormat format, int originalWidth, int originalHeight, int stride, BiConsumer<char[], Integer> resultConsumer) {
+        render(PixelSource.of(buf, format, originalWidth, originalHeight, stride), resultConsumer);
     }
 
     @Override
     public void render(IntBuffer buf, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
-        render(buf.array(), originalWidth, originalHeight, resultConsumer);
+        render(PixelSource.of(buf, originalWidth, originalHeight), resultConsumer);
     }
 
     /**
@@ -139,8 +907,19 @@ public abstract class AbstractImageRenderer implements ImageRenderer {
      */
     @Override
     public String renderString(BufferedImage image) {
-        int[] data = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
-        return renderString(data, image.getWidth(), image.getHeight());
+        String[] result = new String[1];
+        render(source(image), (buf, len) -> result[0] = new String(buf, 0, len));
+        return result[0];
+    }
+
+    static PixelSource source(BufferedImage image) {
+        PixelSource source = PixelSource.of(image);
+        if (source == null) {
+            // Unsupported layout, let Java2D convert it
+            int[] data = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            source = PixelSource.of(data, image.getWidth(), image.getHeight());
+        }
+        return source;
     }
 
     /**
@@ -157,4 +936,104 @@ public abstract class AbstractImageRenderer implements ImageRenderer {
         render(data, originalWidth, originalHeight, (buf, len) -> result[0] = new String(buf, 0, len));
         return result[0];
     }
+
+    /**
+     * A contiguous range of terminal rows rendered by a single task.
+     */
+    private final class Segment implements Runnable {
+
+        private final int fromRow;
+        private final int toRow;
+        private final BufferSizing sizing;
+        // Allocated on first use, for the byte and char based APIs
+        private byte[] buffer;
+        private char[] chars;
+        private final CellEncoder encoder;
+        private final Scratch scratch = new Scratch();
+        private int length;
+        private Throwable error;
+
+        // Current frame
+        private PixelSource source;
+        private CountDownLatch latch;
+        private boolean toChars;
+
+        private Segment(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            int rows = targetHeight / 2;
+            this.sizing = new BufferSizing(Math.max((int) ((long) estimatedLength() * (toRow - fromRow) / rows), maxRowLength()));
+            this.encoder = new CellEncoder(AbstractImageRenderer.this, targetWidth);
+        }
+
+        private void prepare(PixelSource source, CountDownLatch latch, boolean toChars) {
+            this.source = source;
+            this.latch = latch;
+            this.toChars = toChars;
+            this.length = 0;
+            this.error = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                length = toChars ? encodeChars() : encodeBytes();
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                source = null;
+                latch.countDown();
+            }
+        }
+
+        private int encodeBytes() {
+            if (buffer == null)
+                buffer = new byte[sizing.estimate()];
+            final int rowLength = maxRowLength();
+            int pos = 0;
+            for (int row = fromRow; row < toRow; ++row) {
+                if (pos + rowLength > buffer.length)
+                    buffer = Arrays.copyOf(buffer, BufferSizing.grow(buffer.length, pos + rowLength));
+                pos = renderRows(source, row, row + 1, encoder, scratch, buffer, pos);
+            }
+            return pos;
+        }
+
+        private int encodeChars() {
+            if (chars == null)
+                chars = new char[sizing.estimate()];
+            final int rowLength = maxRowLength();
+            int pos = 0;
+            for (int row = fromRow; row < toRow; ++row) {
+                if (pos + rowLength > chars.length)
+                    chars = Arrays.copyOf(chars, BufferSizing.grow(chars.length, pos + rowLength));
+                pos = renderRows(source, row, row + 1, encoder, scratch, chars, pos);
+            }
+            return pos;
+        }
+
+        /**
+         * Called once the segment has been written to the output.
+         */
+        private void written() {
+            if (toChars) {
+                int capacity = sizing.used(chars.length, length);
+                if (capacity != chars.length)
+                    chars = new char[capacity];
+            } else {
+                int capacity = sizing.used(buffer.length, length);
+                if (capacity != buffer.length)
+                    buffer = new byte[capacity];
+            }
+        }
+
+        private void release() {
+            buffer = null;
+            chars = null;
+        }
+
+        private long retainedBytes() {
+            return (buffer == null ? 0 : buffer.length) + (chars == null ? 0 : 2L * chars.length) + scratch.retainedBytes();
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package tech.guiyom.anscapes.renderer;
+
+import tech.guiyom.anscapes.Anscapes;
+import tech.guiyom.anscapes.ColorMetric;
+import tech.guiyom.anscapes.ColorMode;
+import tech.guiyom.anscapes.NearestColorTable;
+import tech.guiyom.anscapes.Palette;
+
+import java.util.Arrays;
+
+/**
+ * Allow conversion of image to an ansi escape sequence of the 256 colors xterm palette.
+ * <p>
+ * Pixels are matched against the 6x6x6 color cube and the grayscale ramp only, the 16 first colors depend too much on
+ * the terminal theme to be relied upon, unless the actual theme is given as a {@link Palette}. With the rgb metric and
+ * the default palette, the nearest color is computed arithmetically, without searching the palette. Other metrics and
+ * palettes use the {@link NearestColorTable} of the palette.
+ * <p>
+ * You should use one instance per image / image sequence.
+ */
+public class Ansi256ImageRenderer extends AbstractImageRenderer {
+
+    /**
+     * A dithering amplitude suited to the palette, see {@link #setDithering(int)}.
+     */
+    public static final int DITHERING = 40;
+
+    // Color parameters indexed by code
+    private static final byte[][] FG = new byte[256][];
+    private static final byte[][] BG = new byte[256][];
+    // Nearest cube level for each channel value
+    private static final byte[] CUBE = new byte[256];
+    private static final int[] LEVELS = new int[6];
+    // Nearest gray step for each sum of the 3 channels
+    private static final byte[] GRAY = new byte[3 * 255 + 1];
+    // The cube and the grayscale ramp, indices are codes minus 16
+    private static final Palette CUBE_PALETTE;
+
+    // Null when computed arithmetically
+    private final NearestColorTable colorTable;
+    private final ColorMetric colorMetric;
+    // Code of the first color of the table
+    private final int firstCode;
+    // Displayed colors, indexed by code
+    private final Palette palette;
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            FG[i] = Sgr.ascii("38;5;" + i);
+            BG[i] = Sgr.ascii("48;5;" + i);
+        }
+        for (int i = 0; i < 6; ++i)
+            LEVELS[i] = Anscapes.rgb256(16 + 36 * i) >> 16;
+        for (int v = 0, level = 0; v < 256; ++v) {
+            // Ties go to the lower level
+            if (level < 5 && LEVELS[level + 1] - v < v - LEVELS[level])
+                ++level;
+            CUBE[v] = (byte) level;
+        }
+        for (int sum = 0, step = 0; sum < GRAY.length; ++sum) {
+            // Compare with the mean without dividing : 3 * (8 + 10 * step)
+            if (step < 23 && 24 + 30 * (step + 1) - sum < sum - 24 - 30 * step)
+                ++step;
+            GRAY[sum] = (byte) step;
+        }
+        int[] palette = new int[240];
+        for (int i = 0; i < palette.length; ++i)
+            palette[i] = Anscapes.rgb256(16 + i);
+        CUBE_PALETTE = new Palette(palette);
+    }
+
+    /**
+     * @param targetWidth  the target width for image rescaling
+     * @param targetHeight the target height for image rescaling
+     */
+    public Ansi256ImageRenderer(int targetWidth, int targetHeight) {
+        this(targetWidth, targetHeight, ColorMetric.RGB);
+    }
+
+    /**
+     * @param targetWidth  the target width for image rescaling
+     * @param targetHeight the target height for image rescaling
+     * @param metric       the distance used to match colors
+     */
+    public Ansi256ImageRenderer(int targetWidth, int targetHeight, ColorMetric metric) {
+        super(ColorMode.ANSI256, targetWidth, targetHeight);
+        this.colorTable = metric == ColorMetric.RGB ? null : CUBE_PALETTE.table(metric);
+        this.colorMetric = metric;
+        this.firstCode = 16;
+        this.palette = Palette.XTERM256;
+    }
+
+    /**
+     * @param targetWidth  the target width for image rescaling
+     * @param targetHeight the target height for image rescaling
+     * @param palette      the 256 colors of the terminal, see {@link Palette#xterm256(Palette)}
+     * @param metric       the distance used to match colors
+     */
+    public Ansi256ImageRenderer(int targetWidth, int targetHeight, Palette palette, ColorMetric metric) {
+        super(ColorMode.ANSI256, targetWidth, targetHeight);
+        if (palette.size() != 256)
+            throw new IllegalArgumentException("Expected 256 colors, got " + palette.size() + '.');
+        this.colorTable = palette.table(metric);
+        this.colorMetric = metric;
+        this.firstCode = 0;
+        this.palette = palette;
+    }
+
+    /**
+     * Find the nearest color of the 256 colors palette, ignoring the 16 first ones.
+     *
+     * @param rgb a packed rgb int, alpha is ignored
+     * @return the color code, between 16 and 255
+     */
+    static int nearest(int rgb) {
+
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+
+        int qr = CUBE[r];
+        int qg = CUBE[g];
+        int qb = CUBE[b];
+        int dr = LEVELS[qr] - r;
+        int dg = LEVELS[qg] - g;
+        int db = LEVELS[qb] - b;
+        int cubeDist = dr * dr + dg * dg + db * db;
+
+        int step = GRAY[r + g + b];
+        int v = 8 + 10 * step;
+        int grayDist = (v - r) * (v - r) + (v - g) * (v - g) + (v - b) * (v - b);
+
+        return grayDist < cubeDist ? 232 + step : 16 + 36 * qr + 6 * qg + qb;
+    }
+
+    /**
+     * Enable ordered dithering, {@link #DITHERING} suits the 256 colors cube. The pattern only depends on the pixel position,
+     * so rows are still rendered in parallel and static areas of a video don't change between frames.
+     *
+     * @param amplitude the spread of the pattern, in channel values, 0 to disable dithering
+     */
+    @Override
+    public void setDithering(int amplitude) {
+        super.setDithering(amplitude);
+    }
+
+    /**
+     * Enable error diffusion for the best quality on still images, rows are then rendered on the caller thread.
+     *
+     * @param diffusion the kernel, null to disable error diffusion
+     */
+    @Override
+    public void setDiffusion(Diffusion diffusion) {
+        super.setDiffusion(diffusion);
+    }
+
+    @Override
+    protected void quantizeRow(int[] pixels, int offset, int[] colors, int colorsOffset, int length) {
+        if (colorTable == null) {
+            for (int i = 0; i < length; ++i)
+                colors[colorsOffset + i] = nearest(pixels[offset + i]);
+        } else {
+            for (int i = 0; i < length; ++i)
+                colors[colorsOffset + i] = firstCode + colorTable.nearest(pixels[offset + i]);
+        }
+    }
+
+    @Override
+    Object colorMatching() {
+        // Whether the cube or the palette is searched, and how
+        return Arrays.asList(palette, firstCode, colorMetric);
+    }
+
+    @Override
+    protected int rgb(int color) {
+        return palette.rgb(color);
+    }
+
+    @Override
+    protected int putFg(byte[] out, int pos, int color) {
+        return Sgr.put(out, pos, FG[color]);
+    }
+
+    @Override
+    protected int putBg(byte[] out, int pos, int color) {
+        return Sgr.put(out, pos, BG[color]);
+    }
+
+    @Override
+    protected int maxCellLength() {
+        // CSI 38;5;255;48;5;255m and the char
+        return 2 + 8 + 1 + 8 + 1 + 3;
+    }
+}
@@ -1,11 +1,12 @@
 package tech.guiyom.anscapes.renderer;
 
 import tech.guiyom.anscapes.Anscapes;
-import tech.guiyom.anscapes.AnsiColor;
+import tech.guiyom.anscapes.ColorMetric;
 import tech.guiyom.anscapes.ColorMode;
+import tech.guiyom.anscapes.NearestColorTable;
+import tech.guiyom.anscapes.Palette;
 
-import java.awt.Color;
-import java.util.function.BiConsumer;
+import java.util.Arrays;
 
 /**
  * Allow conversion of image to an ansi escape sequence of 16 basic colors.
@@ -14,7 +15,27 @@ import java.util.function.BiConsumer;
  */
 public class AnsiImageRenderer extends AbstractImageRenderer {
 
+    /**
+     * A dithering amplitude suited to the palette, see {@link #setDithering(int)}.
+     */
+    public static final int DITHERING = 96;
+
+    // Color parameters indexed by ordinal
+    private static final byte[][] FG = new byte[16][];
+    private static final byte[][] BG = new byte[16][];
+
+    static {
+        for (int i = 0; i < 16; ++i) {
+            FG[i] = parameters(Anscapes.Colors.fromOrdinal(i).fg());
+            BG[i] = parameters(Anscapes.Colors.fromOrdinal(i).bg());
+        }
+    }
+
     private final int threshold;
+    private final ColorMetric colorMetric;
+    private final NearestColorTable colorTable;
+    // Displayed colors, indexed by ordinal
+    private final Palette palette;
 
     /**
      * @param targetWidth  the target width for image rescaling
@@ -29,50 +50,97 @@ public class AnsiImageRenderer extends AbstractImageRenderer {
      * @param targetHeight the target height for image rescaling
      */
     public AnsiImageRenderer(int targetWidth, int targetHeight, int threshold) {
+        this(targetWidth, targetHeight, threshold, ColorMetric.RGB);
+    }
+
+    /**
+     * @param targetWidth  the target width for image rescaling
+     * @param targetHeight the target height for image rescaling
+     * @param threshold    distance to evaluate a spot-on, in the unit of the metric
+     * @param metric       the distance used to match colors
+     */
+    public AnsiImageRenderer(int targetWidth, int targetHeight, int threshold, ColorMetric metric) {
         super(ColorMode.ANSI, targetWidth, targetHeight);
         this.threshold = threshold;
+        this.colorMetric = metric;
+        this.colorTable = NearestColorTable.ansi(threshold, metric);
+        this.palette = Palette.ANSI;
     }
 
-    @Override
-    public void render(int[] data, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
+    /**
+     * @param targetWidth  the target width for image rescaling
+     * @param targetHeight the target height for image rescaling
+     * @param palette      the 16 colors of the terminal, indexed by {@link Anscapes.Colors} ordinal
+     * @param metric       the distance used to match colors
+     */
+    public AnsiImageRenderer(int targetWidth, int targetHeight, Palette palette, ColorMetric metric) {
+        super(ColorMode.ANSI, targetWidth, targetHeight);
+        if (palette.size() != 16)
+            throw new IllegalArgumentException("Expected 16 colors, got " + palette.size() + '.');
+        this.threshold = 0;
+        this.colorMetric = metric;
+        this.colorTable = palette.table(metric);
+        this.palette = palette;
+    }
 
-        // Resize if needed
-        if (originalWidth != targetWidth || originalHeight != targetHeight) {
-            resize(data, originalWidth, originalHeight);
-            data = resizeBuffer;
-        }
+    /**
+     * Enable ordered dithering, {@link #DITHERING} suits the 16 colors. The pattern only depends on the pixel position,
+     * so rows are still rendered in parallel and static areas of a video don't change between frames.
+     *
+     * @param amplitude the spread of the pattern, in channel values, 0 to disable dithering
+     */
+    @Override
+    public void setDithering(int amplitude) {
+        super.setDithering(amplitude);
+    }
 
-        this.outputBuffer.reset();
-        AnsiColor prevUpper = null;
-        AnsiColor prevLower = null;
+    /**
+     * Enable error diffusion for the best quality on still images, rows are then rendered on the caller thread.
+     *
+     * @param diffusion the kernel, null to disable error diffusion
+     */
+    @Override
+    public void setDiffusion(Diffusion diffusion) {
+        super.setDiffusion(diffusion);
+    }
 
-        for (int i = 0; i < targetHeight / 2; ++i) {
+    @Override
+    protected void quantizeRow(int[] pixels, int offset, int[] colors, int colorsOffset, int length) {
+        for (int i = 0; i < length; ++i)
+            colors[colorsOffset + i] = colorTable.nearest(pixels[offset + i]);
+    }
 
-            int y = i * 2;
-            for (int x = 0; x < targetWidth; ++x) {
-                AnsiColor upper = Anscapes.findNearestColor(new Color(data[y * targetHeight + x], true), threshold);
-                AnsiColor lower = null;
-                if (y + 1 < targetHeight) {
-                    lower = Anscapes.findNearestColor(new Color(data[y * targetHeight + targetHeight + x], true), threshold);
-                } else {
-                    lower = Anscapes.Colors.BLACK;
-                }
+    @Override
+    Object colorMatching() {
+        // The table only depends on them, tables of equal palettes being different instances
+        return Arrays.asList(palette, threshold, colorMetric);
+    }
 
-                if (!upper.equals(prevUpper))
-                    outputBuffer.put(upper.fg());
-                if (!lower.equals(prevLower))
-                    outputBuffer.put(lower.bg());
+    @Override
+    protected int rgb(int color) {
+        return palette.rgb(color);
+    }
 
-                outputBuffer.put(CHAR_TOP);
+    @Override
+    protected int putFg(byte[] out, int pos, int color) {
+        return Sgr.put(out, pos, FG[color]);
+    }
 
-                prevUpper = upper;
-                prevLower = lower;
-            }
+    @Override
+    protected int putBg(byte[] out, int pos, int color) {
+        return Sgr.put(out, pos, BG[color]);
+    }
 
-            outputBuffer.put(Anscapes.RESET);
-            outputBuffer.put(System.lineSeparator());
-        }
+    @Override
+    protected int maxCellLength() {
+        // CSI 97;107m and the char
+        return 2 + 2 + 1 + 3 + 1 + 3;
+    }
 
-        resultConsumer.accept(outputBuffer.array(), outputBuffer.position());
+    /**
+     * @return the parameters of a color sequence, stripped from the CSI prefix and the final m
+     */
+    private static byte[] parameters(String sequence) {
+        return Sgr.ascii(sequence.substring(Anscapes.CSI.length(), sequence.length() - 1));
     }
 }
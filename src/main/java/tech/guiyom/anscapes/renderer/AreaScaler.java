@@ -0,0 +1,131 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.util.Arrays;
+
+/**
+ * Box filter downscaler. Each target pixel is the average of the source pixels it covers.
+ * Source rows are read once, in order, and summed per target column.
+ * Spans of source pixels are precomputed per column and per row and only updated when the source size changes.
+ * When upscaling, spans are a single pixel wide, which is a nearest neighbour resize.
+ */
+final class AreaScaler {
+
+    private static final long HALF = 1L << 31;
+
+    private final int targetWidth;
+    private final int targetHeight;
+    // Source spans [start, end[ for each target column and row
+    private final int[] colStart;
+    private final int[] colEnd;
+    private final int[] rowStart;
+    private final int[] rowEnd;
+    private int maxColSpan;
+    private int originalWidth = -1;
+    private int originalHeight = -1;
+
+    AreaScaler(int targetWidth, int targetHeight) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.colStart = new int[targetWidth];
+        this.colEnd = new int[targetWidth];
+        this.rowStart = new int[targetHeight];
+        this.rowEnd = new int[targetHeight];
+    }
+
+    private static void spans(int original, int target, int[] start, int[] end) {
+        for (int i = 0; i < target; ++i) {
+            start[i] = (int) ((long) i * original / target);
+            end[i] = Math.max((int) ((long) (i + 1) * original / target), start[i] + 1);
+        }
+    }
+
+    /**
+     * Compute spans for a new source size, does nothing if the size didn't change.
+     * This must be called before resizing, and not concurrently with it.
+     */
+    void update(int originalWidth, int originalHeight) {
+        if (originalWidth != this.originalWidth) {
+            spans(originalWidth, targetWidth, colStart, colEnd);
+            maxColSpan = 0;
+            for (int j = 0; j < targetWidth; ++j)
+                maxColSpan = Math.max(maxColSpan, colEnd[j] - colStart[j]);
+            this.originalWidth = originalWidth;
+        }
+        if (originalHeight != this.originalHeight) {
+            spans(originalHeight, targetHeight, rowStart, rowEnd);
+            this.originalHeight = originalHeight;
+        }
+    }
+
+    /**
+     * Resize only the target rows in [fromRow, toRow[. Concurrent calls for distinct rows are safe.
+     *
+     * @param source  the source pixels
+     * @param out     the target pixels
+     * @param scratch the scratch buffers of the current thread
+     */
+    void resize(PixelSource source, int[] out, int fromRow, int toRow, Scratch scratch) {
+        // Two sums per column when channels are summed in pairs, four otherwise
+        final int[] sums = scratch.sums(targetWidth * 4);
+        for (int i = fromRow; i < toRow; ++i) {
+            final int y0 = rowStart[i];
+            final int y1 = rowEnd[i];
+            // Small boxes, two channels per add as sums fit in 16 bits
+            final boolean packed = maxColSpan * (y1 - y0) <= 257;
+
+            Arrays.fill(sums, 0, targetWidth * 4, 0);
+            for (int y = y0; y < y1; ++y) {
+                final int[] row = source.row(y, scratch);
+                final int offset = source.offset(y);
+                for (int j = 0; j < targetWidth; ++j) {
+                    final int x1 = offset + colEnd[j];
+                    if (packed) {
+                        int rb = 0, ag = 0;
+                        for (int x = offset + colStart[j]; x < x1; ++x) {
+                            int p = row[x];
+                            rb += p & 0xff00ff;
+                            ag += (p >>> 8) & 0xff00ff;
+                        }
+                        sums[j * 2] += rb;
+                        sums[j * 2 + 1] += ag;
+                    } else {
+                        int a = 0, r = 0, g = 0, b = 0;
+                        for (int x = offset + colStart[j]; x < x1; ++x) {
+                            int p = row[x];
+                            a += p >>> 24;
+                            r += (p >> 16) & 0xff;
+                            g += (p >> 8) & 0xff;
+                            b += p & 0xff;
+                        }
+                        sums[j * 4] += a;
+                        sums[j * 4 + 1] += r;
+                        sums[j * 4 + 2] += g;
+                        sums[j * 4 + 3] += b;
+                    }
+                }
+            }
+
+            for (int j = 0; j < targetWidth; ++j) {
+                int a, r, g, b;
+                if (packed) {
+                    a = sums[j * 2 + 1] >>> 16;
+                    r = sums[j * 2] >>> 16;
+                    g = sums[j * 2 + 1] & 0xffff;
+                    b = sums[j * 2] & 0xffff;
+                } else {
+                    a = sums[j * 4];
+                    r = sums[j * 4 + 1];
+                    g = sums[j * 4 + 2];
+                    b = sums[j * 4 + 3];
+                }
+                // Fixed point reciprocal, one division per pixel instead of four
+                int area = (colEnd[j] - colStart[j]) * (y1 - y0);
+                long inv = ((1L << 32) + (area >> 1)) / area;
+                out[i * targetWidth + j] = (int) Math.min((a * inv + HALF) >> 32, 0xff) << 24
+                                                   | (int) Math.min((r * inv + HALF) >> 32, 0xff) << 16
+                                                   | (int) Math.min((g * inv + HALF) >> 32, 0xff) << 8
+                                                   | (int) Math.min((b * inv + HALF) >> 32, 0xff);
+            }
+        }
+    }
+}
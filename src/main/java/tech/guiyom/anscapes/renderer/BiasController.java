@@ -0,0 +1,168 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.util.Arrays;
+
+/**
+ * Tunes the bias of a renderer frame by frame to keep the output under a byte budget, with the lowest bias that fits.
+ * <p>
+ * The bias moves along fixed levels. It goes up as soon as the average frame size exceeds the budget, and only goes
+ * down once frames have been well under the budget for a while and the size predicted at the lower level would still
+ * fit. Predictions use the size ratio between the two levels, measured on the frames around the last change between
+ * them. This keeps the quality from oscillating around the budget.
+ * <p>
+ * A controller keeps the state of an image sequence and must only be used by one renderer.
+ *
+ * @see RgbImageRenderer#setBiasController(BiasController)
+ */
+public final class BiasController {
+
+    private static final int[] LEVELS = {0, 1, 2, 3, 4, 6, 8, 11, 16, 22, 32, 45, 64, 90, 128};
+    // Frames are considered well under the budget below this ratio
+    private static final double LOW_RATIO = 0.8;
+    // Frames to wait after a change before lowering the bias
+    private static final int HOLD_FRAMES = 8;
+    // Weight of a new frame in the averages
+    private static final double SMOOTHING = 0.3;
+
+    private final long budget;
+    private final boolean perSecond;
+    private int maxBias = 64;
+
+    private int level = 0;
+    // Average frame size at the current level
+    private double average = -1;
+    // Level and average size before the last change
+    private int previousLevel = -1;
+    private double previousAverage = -1;
+    // Frame size at each level divided by the size at the next one, -1 when never measured
+    private final double[] ratios = new double[LEVELS.length - 1];
+    private int stableFrames = 0;
+    // Average time between two frames, for a budget per second
+    private long lastNanos = 0;
+    private double interval = -1;
+
+    private BiasController(long budget, boolean perSecond) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("Budget should be positive.");
+        this.budget = budget;
+        this.perSecond = perSecond;
+        reset();
+    }
+
+    /**
+     * @param bytes the maximum size of a frame, in bytes
+     * @return a controller keeping every frame under the budget
+     */
+    public static BiasController perFrame(long bytes) {
+        return new BiasController(bytes, false);
+    }
+
+    /**
+     * @param bytes the maximum output rate, in bytes per second
+     * @return a controller keeping the output rate under the budget, measuring the frame rate as frames are rendered
+     */
+    public static BiasController perSecond(long bytes) {
+        return new BiasController(bytes, true);
+    }
+
+    /**
+     * @param maxBias the highest bias the controller may use, 64 by default
+     */
+    public void setMaxBias(int maxBias) {
+        if (maxBias < 0)
+            throw new IllegalArgumentException("Max bias should be positive.");
+        this.maxBias = maxBias;
+        if (LEVELS[level] > maxBias) {
+            while (level > 0 && LEVELS[level] > maxBias)
+                --level;
+            average = -1;
+            previousLevel = -1;
+        }
+    }
+
+    public int getMaxBias() {
+        return maxBias;
+    }
+
+    /**
+     * @return the bias to render the next frame with
+     */
+    public int getBias() {
+        return LEVELS[level];
+    }
+
+    /**
+     * Forget everything measured, e.g. when the content changes entirely. The bias starts again from 0.
+     */
+    public void reset() {
+        level = 0;
+        average = -1;
+        previousLevel = -1;
+        previousAverage = -1;
+        stableFrames = 0;
+        lastNanos = 0;
+        interval = -1;
+        Arrays.fill(ratios, -1);
+    }
+
+    /**
+     * Record the size of a frame rendered with the current bias.
+     *
+     * @param bytes the frame size
+     * @return the bias to render the next frame with
+     */
+    public int update(int bytes) {
+
+        if (average < 0) {
+            average = bytes;
+            // The content barely changed between the last frame at the previous level and this one
+            if (previousLevel == level + 1 && previousAverage > 0)
+                ratios[level] = bytes / previousAverage;
+            else if (previousLevel >= 0 && previousLevel == level - 1 && bytes > 0)
+                ratios[previousLevel] = previousAverage / bytes;
+        } else {
+            average += SMOOTHING * (bytes - average);
+        }
+        ++stableFrames;
+
+        double frameBudget = frameBudget();
+        if (frameBudget < 0)
+            return getBias();
+
+        if (average > frameBudget) {
+            if (level + 1 < LEVELS.length && LEVELS[level + 1] <= maxBias)
+                setLevel(level + 1);
+        } else if (level > 0 && stableFrames >= HOLD_FRAMES && average < frameBudget * LOW_RATIO) {
+            // Try the lower level when the ratio is unknown, going back up would measure it
+            double predicted = ratios[level - 1] < 0 ? 0 : average * ratios[level - 1];
+            if (predicted <= frameBudget)
+                setLevel(level - 1);
+        }
+        return getBias();
+    }
+
+    /**
+     * @return the budget of the next frame, -1 when not known yet
+     */
+    private double frameBudget() {
+        if (!perSecond)
+            return budget;
+
+        long now = System.nanoTime();
+        if (lastNanos != 0) {
+            long elapsed = now - lastNanos;
+            interval = interval < 0 ? elapsed : interval + SMOOTHING * (elapsed - interval);
+        }
+        lastNanos = now;
+        return interval < 0 ? -1 : budget * interval / 1e9;
+    }
+
+    private void setLevel(int level) {
+        // Remember the size at the level left, the new level starts with no average
+        this.previousLevel = this.level;
+        this.previousAverage = average;
+        this.level = level;
+        this.average = -1;
+        this.stableFrames = 0;
+    }
+}
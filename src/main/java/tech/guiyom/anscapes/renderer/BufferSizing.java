@@ -0,0 +1,59 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Capacity of a reusable output buffer. Buffers start from an estimate of the frame length, grow geometrically when a
+ * frame doesn't fit, and shrink back once a whole window of frames used less than a quarter of their capacity,
+ * e.g. after a burst of noisy frames.
+ */
+final class BufferSizing {
+
+    // Frames after which the capacity is checked against the longest one
+    static final int WINDOW = 64;
+    // Leaves some room to the array header, like the JDK collections do
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final int estimate;
+    // Longest frame of the current window
+    private int peak = 0;
+    private int frames = 0;
+
+    /**
+     * @param estimate the initial capacity, the buffer never shrinks below it
+     */
+    BufferSizing(int estimate) {
+        this.estimate = estimate;
+    }
+
+    int estimate() {
+        return estimate;
+    }
+
+    /**
+     * @param capacity the current capacity
+     * @param needed   the minimum capacity
+     * @return the capacity to grow to, at least twice the current one
+     */
+    static int grow(int capacity, int needed) {
+        if (needed > MAX_CAPACITY)
+            throw new OutOfMemoryError("Output too large");
+        return (int) Math.min(MAX_CAPACITY, Math.max(needed, 2L * capacity));
+    }
+
+    /**
+     * Record the length of a frame.
+     *
+     * @param capacity the current capacity
+     * @param length   the length used by the frame
+     * @return the capacity the buffer should have, the current one unless it should shrink
+     */
+    int used(int capacity, int length) {
+        peak = Math.max(peak, length);
+        if (++frames < WINDOW)
+            return capacity;
+
+        long target = Math.max(estimate, 2L * peak);
+        frames = 0;
+        peak = 0;
+        return capacity >= 2 * target ? (int) target : capacity;
+    }
+}
@@ -0,0 +1,75 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Destination of encoded UTF-8 output, written in chunks made of whole terminal rows.
+ * Sinks are reusable, the destination is set before each frame.
+ */
+abstract class ByteSink {
+
+    /**
+     * Size of the chunks rows are encoded into before being written.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * @param buf the encoded bytes, never splitting an UTF-8 sequence
+     * @param off the first byte
+     * @param len the number of bytes
+     */
+    abstract void write(byte[] buf, int off, int len) throws IOException;
+
+    /**
+     * Called once the whole frame has been written.
+     */
+    abstract void flush() throws IOException;
+
+    /**
+     * Writes chunks to a channel, wrapped in a heap buffer. Channels are expected to be blocking.
+     */
+    static final class ChannelSink extends ByteSink {
+
+        private WritableByteChannel channel;
+
+        void setChannel(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void write(byte[] buf, int off, int len) throws IOException {
+            ByteBuffer chunk = ByteBuffer.wrap(buf, off, len);
+            while (chunk.hasRemaining())
+                channel.write(chunk);
+        }
+
+        @Override
+        void flush() {
+        }
+    }
+
+    /**
+     * Writes chunks as is to a stream.
+     */
+    static final class StreamSink extends ByteSink {
+
+        private OutputStream out;
+
+        void setStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        void write(byte[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+        }
+
+        @Override
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
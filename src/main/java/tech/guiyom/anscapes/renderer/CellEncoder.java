@@ -0,0 +1,218 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Encode half block cells for a renderer, keeping track of the colors currently set on the terminal.
+ * Also holds scratch rows for quantized colors. An instance must only be used by a single thread.
+ */
+final class CellEncoder {
+
+    private final AbstractImageRenderer renderer;
+    // Quantized colors of the current row
+    final int[] upper;
+    final int[] lower;
+    // Colors currently set, -1 when unknown
+    int fg = -1;
+    int bg = -1;
+    // Both pixel rows once blended or dithered, allocated on first use
+    private int[] prepared;
+    // Last glyph written, 0 when none, and its held back repetitions
+    private char last;
+    private int repeat;
+    // Colors the current cell sets, -1 to keep the current one
+    private int setFg;
+    private int setBg;
+    // Color sequence copied to char output, allocated on first use
+    private byte[] sequence;
+
+    CellEncoder(AbstractImageRenderer renderer, int width) {
+        this.renderer = renderer;
+        this.upper = new int[width];
+        this.lower = new int[width];
+    }
+
+    /**
+     * @return a buffer able to hold the two pixel rows of a cell row
+     */
+    int[] prepared() {
+        if (prepared == null)
+            prepared = new int[upper.length * 2];
+        return prepared;
+    }
+
+    /**
+     * Forget about the current terminal colors, the next cell will set both of them.
+     */
+    void reset() {
+        fg = -1;
+        bg = -1;
+        last = 0;
+        repeat = 0;
+    }
+
+    /**
+     * Encode a single cell. The glyph is chosen to reuse the colors already set as much as possible :
+     * a uniform cell only needs one of them, and a swapped pair is drawn with the lower half block.
+     * When the renderer uses REP, cells identical to the previous one are held back until {@link #flush(byte[], int)}.
+     *
+     * @param out   the output buffer
+     * @param pos   the position to write at
+     * @param upper the quantized upper pixel color
+     * @param lower the quantized lower pixel color
+     * @return the new position
+     */
+    int cell(byte[] out, int pos, int upper, int lower) {
+        char glyph = glyph(upper, lower);
+        if (held(glyph))
+            return pos;
+
+        pos = flush(out, pos);
+        pos = colors(out, pos, setFg, setBg);
+        last = glyph;
+        return Sgr.putChar(out, pos, glyph);
+    }
+
+    /**
+     * Same as {@link #cell(byte[], int, int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    int cell(char[] out, int pos, int upper, int lower) {
+        char glyph = glyph(upper, lower);
+        if (held(glyph))
+            return pos;
+
+        pos = flush(out, pos);
+        if (setFg >= 0 || setBg >= 0) {
+            if (sequence == null)
+                sequence = new byte[renderer.maxCellLength()];
+            pos = Sgr.put(out, pos, sequence, 0, colors(sequence, 0, setFg, setBg));
+        }
+        last = glyph;
+        return Sgr.putChar(out, pos, glyph);
+    }
+
+    /**
+     * Pick the glyph of a cell and the colors it needs, left in {@link #setFg} and {@link #setBg}.
+     *
+     * @return the glyph
+     */
+    private char glyph(int upper, int lower) {
+
+        if (!renderer.differs(upper, lower)) {
+            // Uniform cell, a blank only needs the background
+            if (!renderer.differs(bg, upper)) {
+                bg = upper;
+                return glyph(-1, -1, AbstractImageRenderer.CHAR_BLANK);
+            } else if (!renderer.differs(fg, upper)) {
+                fg = upper;
+                return glyph(-1, -1, AbstractImageRenderer.CHAR_FULL);
+            } else {
+                bg = upper;
+                return glyph(-1, upper, AbstractImageRenderer.CHAR_BLANK);
+            }
+        }
+
+        boolean fgUpper = renderer.differs(fg, upper);
+        boolean bgLower = renderer.differs(bg, lower);
+
+        // Swap the halves when it saves a color
+        if (fgUpper || bgLower) {
+            boolean fgLower = renderer.differs(fg, lower);
+            boolean bgUpper = renderer.differs(bg, upper);
+            if (cost(fgUpper, bgLower) > cost(fgLower, bgUpper)) {
+                fg = lower;
+                bg = upper;
+                return glyph(fgLower ? lower : -1, bgUpper ? upper : -1, AbstractImageRenderer.CHAR_BOTTOM);
+            }
+        }
+
+        fg = upper;
+        bg = lower;
+        return glyph(fgUpper ? upper : -1, bgLower ? lower : -1, AbstractImageRenderer.CHAR_TOP);
+    }
+
+    private char glyph(int fgColor, int bgColor, char glyph) {
+        setFg = fgColor;
+        setBg = bgColor;
+        return glyph;
+    }
+
+    /**
+     * @return if the cell is a repetition of the last glyph, held back until the next flush
+     */
+    private boolean held(char glyph) {
+        if (renderer.repeat && glyph == last && setFg < 0 && setBg < 0) {
+            ++repeat;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write the held back repetitions of the last glyph, either with REP or as is, whichever is shorter.
+     * Must be called before writing anything else than cells, the next cell won't be a repetition.
+     *
+     * @return the new position
+     */
+    int flush(byte[] out, int pos) {
+        if (repeat > 0) {
+            if (repeat * Sgr.length(last) > Sgr.repeatLength(repeat)) {
+                pos = Sgr.putRepeat(out, pos, repeat);
+            } else {
+                for (int i = 0; i < repeat; ++i)
+                    pos = Sgr.putChar(out, pos, last);
+            }
+            repeat = 0;
+        }
+        last = 0;
+        return pos;
+    }
+
+    /**
+     * Same as {@link #flush(byte[], int)} for the char based API, REP being used when it is shorter once encoded.
+     *
+     * @return the new position
+     */
+    int flush(char[] out, int pos) {
+        if (repeat > 0) {
+            if (repeat * Sgr.length(last) > Sgr.repeatLength(repeat)) {
+                pos = Sgr.putRepeat(out, pos, repeat);
+            } else {
+                for (int i = 0; i < repeat; ++i)
+                    pos = Sgr.putChar(out, pos, last);
+            }
+            repeat = 0;
+        }
+        last = 0;
+        return pos;
+    }
+
+    /**
+     * Write the colors that need to be set, both of them in a single sequence.
+     *
+     * @param fgColor the foreground color or -1 to keep the current one
+     * @param bgColor the background color or -1 to keep the current one
+     * @return the new position
+     */
+    private int colors(byte[] out, int pos, int fgColor, int bgColor) {
+
+        if (fgColor < 0 && bgColor < 0)
+            return pos;
+
+        out[pos++] = '\33';
+        out[pos++] = '[';
+        if (fgColor >= 0) {
+            pos = renderer.putFg(out, pos, fgColor);
+            if (bgColor >= 0)
+                out[pos++] = ';';
+        }
+        if (bgColor >= 0)
+            pos = renderer.putBg(out, pos, bgColor);
+        out[pos++] = 'm';
+        return pos;
+    }
+
+    private static int cost(boolean fg, boolean bg) {
+        return (fg ? 1 : 0) + (bg ? 1 : 0);
+    }
+}
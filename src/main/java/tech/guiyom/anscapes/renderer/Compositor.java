@@ -0,0 +1,76 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Blend ARGB pixels over an opaque background color with integer lookups only.
+ * <p>
+ * Each channel is {@code round(a * c / 255) + round((255 - a) * bg / 255)}. The first product comes from a shared
+ * 256x256 table, the second one only depends on alpha and is precomputed for the 3 channels at once. Two rounded terms
+ * of a sum that is at most 255 can't exceed 255, so channels are added without carrying into each other.
+ * Instances are immutable and can be shared between threads.
+ */
+final class Compositor {
+
+    // round(a * c / 255), indexed by a << 8 | c
+    private static final byte[] MUL = new byte[256 * 256];
+
+    static {
+        for (int a = 0; a < 256; ++a)
+            for (int c = 0; c < 256; ++c)
+                MUL[a << 8 | c] = (byte) ((a * c + 127) / 255);
+    }
+
+    private final int background;
+    // Background contribution of the 3 channels, indexed by alpha
+    private final int[] weighted = new int[256];
+
+    /**
+     * @param background the packed rgb background color, alpha is ignored
+     */
+    Compositor(int background) {
+        this.background = background & 0xffffff;
+        int r = (background >> 16) & 0xff;
+        int g = (background >> 8) & 0xff;
+        int b = background & 0xff;
+        for (int a = 0; a < 256; ++a) {
+            int i = (255 - a) << 8;
+            weighted[a] = mul(i | r) << 16 | mul(i | g) << 8 | mul(i | b);
+        }
+    }
+
+    private static int mul(int index) {
+        return MUL[index] & 0xff;
+    }
+
+    /**
+     * @return the background color
+     */
+    int background() {
+        return background;
+    }
+
+    /**
+     * @param argb the pixel to blend
+     * @return the opaque blended pixel
+     */
+    int blend(int argb) {
+        int a = argb >>> 24;
+        if (a == 0xff)
+            return argb;
+        int i = a << 8;
+        return 0xff000000 | ((mul(i | (argb >> 16) & 0xff) << 16 | mul(i | (argb >> 8) & 0xff) << 8 | mul(i | argb & 0xff)) + weighted[a]);
+    }
+
+    /**
+     * Blend consecutive pixels.
+     *
+     * @param pixels    the source pixels
+     * @param offset    the first pixel to blend
+     * @param out       receives the blended pixels
+     * @param outOffset where to write the blended pixels
+     * @param length    the number of pixels
+     */
+    void blend(int[] pixels, int offset, int[] out, int outOffset, int length) {
+        for (int i = 0; i < length; ++i)
+            out[outOffset + i] = blend(pixels[offset + i]);
+    }
+}
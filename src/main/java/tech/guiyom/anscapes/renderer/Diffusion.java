@@ -0,0 +1,16 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Error diffusion kernel, spreading the quantization error of a pixel over its unprocessed neighbours.
+ */
+public enum Diffusion {
+
+    /**
+     * Floyd-Steinberg, spreads the whole error over 4 neighbours, smoothest gradients
+     */
+    FLOYD_STEINBERG,
+    /**
+     * Atkinson, spreads 3/4 of the error over 6 neighbours, keeps more contrast but clips shadows and highlights
+     */
+    ATKINSON
+}
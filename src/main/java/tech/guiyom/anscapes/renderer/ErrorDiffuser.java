@@ -0,0 +1,122 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.util.Arrays;
+
+/**
+ * Error diffusion over fixed-point error rows.
+ * <p>
+ * Pixel rows are processed in order, alternating direction to avoid directional artifacts, each one diffusing its error
+ * to the next two. Error rows are allocated once and reused for every frame, so an instance holds the state of
+ * the frame being rendered and must only be used by one thread, from the first row to the last.
+ */
+final class ErrorDiffuser {
+
+    // Errors are accumulated in sixteenths of channel values
+    private static final int SHIFT = 4;
+    private static final int HALF = 1 << (SHIFT - 1);
+    // Pixels on both sides of a row, where errors falling outside the image go
+    private static final int PAD = 2;
+
+    private final Diffusion diffusion;
+    private final int width;
+    // Errors of the current pixel row and of the two next ones, 3 channels per pixel
+    private int[] current;
+    private int[] next;
+    private int[] last;
+    // Single pixel buffers for the renderer quantization
+    private final int[] pixel = new int[1];
+    private final int[] color = new int[1];
+
+    /**
+     * @param diffusion the kernel
+     * @param width     the row width
+     */
+    ErrorDiffuser(Diffusion diffusion, int width) {
+        this.diffusion = diffusion;
+        this.width = width;
+        this.current = new int[(width + 2 * PAD) * 3];
+        this.next = new int[current.length];
+        this.last = new int[current.length];
+    }
+
+    Diffusion diffusion() {
+        return diffusion;
+    }
+
+    /**
+     * Forget the errors of the previous frame, must be called before the first row.
+     */
+    void reset() {
+        Arrays.fill(current, 0);
+        Arrays.fill(next, 0);
+        Arrays.fill(last, 0);
+    }
+
+    /**
+     * Quantize the next pixel row, alpha is ignored.
+     *
+     * @param renderer     the renderer quantizing pixels and giving back the rgb value of its colors
+     * @param pixels       the source pixels
+     * @param offset       the first pixel of the row
+     * @param colors       receives the quantized colors
+     * @param colorsOffset where to write the colors
+     * @param y            the row position in the image
+     */
+    void apply(AbstractImageRenderer renderer, int[] pixels, int offset, int[] colors, int colorsOffset, int y) {
+
+        final boolean reverse = (y & 1) == 1;
+        final int step = reverse ? -3 : 3;
+
+        for (int i = 0; i < width; ++i) {
+            int x = reverse ? width - 1 - i : i;
+            int e = (x + PAD) * 3;
+            int p = pixels[offset + x];
+            int r = clamp(((p >> 16) & 0xff) + ((current[e] + HALF) >> SHIFT));
+            int g = clamp(((p >> 8) & 0xff) + ((current[e + 1] + HALF) >> SHIFT));
+            int b = clamp((p & 0xff) + ((current[e + 2] + HALF) >> SHIFT));
+
+            pixel[0] = r << 16 | g << 8 | b;
+            renderer.quantizeRow(pixel, 0, color, 0, 1);
+            colors[colorsOffset + x] = color[0];
+
+            int q = renderer.rgb(color[0]);
+            spread(e, step, r - ((q >> 16) & 0xff));
+            spread(e + 1, step, g - ((q >> 8) & 0xff));
+            spread(e + 2, step, b - (q & 0xff));
+        }
+
+        int[] done = current;
+        current = next;
+        next = last;
+        last = done;
+        Arrays.fill(last, 0);
+    }
+
+    /**
+     * Spread the error of a channel over the neighbours, in sixteenths.
+     *
+     * @param e     the channel index in the error rows
+     * @param step  the index offset of the next pixel in the processing direction
+     * @param error the channel error
+     */
+    private void spread(int e, int step, int error) {
+        if (diffusion == Diffusion.ATKINSON) {
+            int part = error * 2;
+            current[e + step] += part;
+            current[e + 2 * step] += part;
+            next[e - step] += part;
+            next[e] += part;
+            next[e + step] += part;
+            last[e] += part;
+        } else {
+            current[e + step] += error * 7;
+            next[e - step] += error * 3;
+            next[e] += error * 5;
+            next[e + step] += error;
+        }
+    }
+
+    private static int clamp(int c) {
+        return Math.max(0, Math.min(255, c));
+    }
+}
@@ -0,0 +1,388 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Stateful video renderer only redrawing the cells that changed since the previous frame.
+ * <p>
+ * The previous frame colors are kept for every cell. Changed cells are reached with cursor movements, unless reprinting
+ * the unchanged cells in between is shorter. The first frame, and the one following {@link #reset()}, is drawn entirely.
+ * Cells are positioned absolutely, starting at {@link #setOrigin(int, int)}, so nothing else should be written over
+ * the image area between two frames.
+ * <p>
+ * You should use one instance per image sequence.
+ */
+public class FrameDiffRenderer {
+
+    // Maximum length of a cursor position sequence
+    private static final int MAX_JUMP_LENGTH = 2 + 10 + 1 + 10 + 1;
+
+    private final AbstractImageRenderer renderer;
+    private final int width;
+    private final int rows;
+    private final CellEncoder encoder;
+    // Maximum length of a row
+    private final int rowLength;
+    // Output, allocated on first use and growing when a frame doesn't fit
+    private byte[] outputBuffer;
+    private final BufferSizing sizing;
+    // Output of the char based API, encoded to chars directly, allocated on first use
+    private char[] charBuffer;
+    private final BufferSizing charSizing;
+    private final ByteSink.ChannelSink channelSink = new ByteSink.ChannelSink();
+    // Cell colors of the displayed frame and of the frame being rendered
+    private int[] prevUpper;
+    private int[] prevLower;
+    private int[] upper;
+    private int[] lower;
+    private boolean hasPrevious = false;
+    // 1-based terminal position of the image top left corner
+    private int originRow = 1;
+    private int originCol = 1;
+
+    /**
+     * @param renderer the renderer used to resize and quantize frames, it can still be used on its own
+     */
+    public FrameDiffRenderer(AbstractImageRenderer renderer) {
+        this.renderer = renderer;
+        this.width = renderer.targetWidth;
+        this.rows = renderer.targetHeight / 2;
+        this.encoder = new CellEncoder(renderer, width);
+        this.prevUpper = new int[width * rows];
+        this.prevLower = new int[width * rows];
+        this.upper = new int[width * rows];
+        this.lower = new int[width * rows];
+        // A changed cell costs at most a cell and a jump, the jump being taken at most once every two cells.
+        // The cell left pending by the previous row is flushed on this one.
+        this.rowLength = (width + 1) * renderer.maxCellLength() + (width / 2 + 1) * MAX_JUMP_LENGTH;
+        // Most frames only change a part of the image, the first one is drawn entirely
+        this.sizing = new BufferSizing(renderer.estimatedLength());
+        this.charSizing = new BufferSizing(renderer.estimatedLength());
+    }
+
+    /**
+     * Set where the image is drawn on the terminal. This forces the next frame to be drawn entirely.
+     *
+     * @param row the 1-based terminal row of the image top left corner
+     * @param col the 1-based terminal column of the image top left corner
+     */
+    public void setOrigin(int row, int col) {
+        this.originRow = Math.max(row, 1);
+        this.originCol = Math.max(col, 1);
+        reset();
+    }
+
+    /**
+     * Forget about the previous frame, e.g. after the terminal has been cleared. The next frame will be drawn entirely.
+     */
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    /**
+     * Memory held for the previous frame and the output, not counting the renderer.
+     *
+     * @return the number of bytes retained between two frames
+     * @see AbstractImageRenderer#getRetainedBytes()
+     */
+    public long getRetainedBytes() {
+        long bytes = 4L * (prevUpper.length + prevLower.length + upper.length + lower.length);
+        if (outputBuffer != null)
+            bytes += outputBuffer.length;
+        if (charBuffer != null)
+            bytes += 2L * charBuffer.length;
+        return bytes;
+    }
+
+    /**
+     * Release the output buffers, e.g. when the sequence is paused. The previous frame is kept.
+     *
+     * @see AbstractImageRenderer#releaseBuffers()
+     */
+    public void releaseBuffers() {
+        outputBuffer = null;
+        charBuffer = null;
+    }
+
+    /**
+     * Render only the differences with the previous frame.
+     *
+     * @param data           the pixel array
+     * @param originalWidth  the pixel array width
+     * @param originalHeight the pixel array height
+     * @param resultConsumer receives the output buffer and the output length, which is 0 when nothing changed
+     */
+    public void render(int[] data, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
+        quantize(data, originalWidth, originalHeight);
+        int len = encodeChars();
+        resultConsumer.accept(charBuffer, len);
+
+        int capacity = charSizing.used(charBuffer.length, len);
+        if (capacity != charBuffer.length)
+            charBuffer = new char[capacity];
+    }
+
+    /**
+     * Render only the differences with the previous frame straight to a channel as UTF-8.
+     *
+     * @param data           the pixel array
+     * @param originalWidth  the pixel array width
+     * @param originalHeight the pixel array height
+     * @param channel        a blocking channel
+     * @see ImageRenderer#render(int[], int, int, WritableByteChannel)
+     */
+    public void render(int[] data, int originalWidth, int originalHeight, WritableByteChannel channel) throws IOException {
+        quantize(data, originalWidth, originalHeight);
+        int len = encode();
+        channelSink.setChannel(channel);
+        try {
+            channelSink.write(outputBuffer, 0, len);
+            channelSink.flush();
+        } finally {
+            channelSink.setChannel(null);
+        }
+        written(len);
+    }
+
+    /**
+     * Render only the differences with the previous frame straight to a stream as UTF-8.
+     *
+     * @param data           the pixel array
+     * @param originalWidth  the pixel array width
+     * @param originalHeight the pixel array height
+     * @param out            the output stream, flushed at the end of the frame
+     */
+    public void render(int[] data, int originalWidth, int originalHeight, OutputStream out) throws IOException {
+        quantize(data, originalWidth, originalHeight);
+        int len = encode();
+        out.write(outputBuffer, 0, len);
+        out.flush();
+        written(len);
+    }
+
+    /**
+     * Resize if needed and quantize the cells of the frame being rendered.
+     */
+    private void quantize(int[] data, int originalWidth, int originalHeight) {
+
+        // Resize if needed
+        if (originalWidth != width || originalHeight != renderer.targetHeight) {
+            renderer.resize(data, originalWidth, originalHeight);
+            data = renderer.resizeBuffer;
+        }
+
+        for (int row = 0; row < rows; ++row)
+            renderer.quantizeCells(data, row, encoder, upper, lower, row * width);
+    }
+
+    /**
+     * Encode the differences with the previous frame in the output buffer.
+     *
+     * @return the output length
+     */
+    private int encode() {
+
+        if (outputBuffer == null)
+            outputBuffer = new byte[sizing.estimate()];
+        byte[] out = outputBuffer;
+        int pos = 0;
+        // The terminal colors are unknown at the start of a frame
+        encoder.reset();
+
+        for (int row = 0; row < rows; ++row) {
+
+            // Column the cursor is at, -1 when not on this row
+            int cursor = -1;
+            if (pos + rowLength + Sgr.RESET.length > out.length)
+                outputBuffer = out = Arrays.copyOf(out, BufferSizing.grow(out.length, pos + rowLength + Sgr.RESET.length));
+
+            for (int x = 0; x < width; ++x) {
+                int i = row * width + x;
+
+                // Leave whatever is displayed, the cell will be redrawn once opaque again
+                if (upper[i] == AbstractImageRenderer.TRANSPARENT)
+                    continue;
+
+                if (hasPrevious && !renderer.differs(prevUpper[i], upper[i]) && !renderer.differs(prevLower[i], lower[i])) {
+                    // Keep what is displayed so small changes can't accumulate
+                    upper[i] = prevUpper[i];
+                    lower[i] = prevLower[i];
+                    continue;
+                }
+
+                if (cursor < 0) {
+                    pos = encoder.flush(out, pos);
+                    pos = Sgr.putCursorPos(out, pos, originRow + row, originCol + x);
+                } else if (cursor < x) {
+                    pos = skip(out, pos, row * width, cursor, x);
+                }
+
+                pos = encoder.cell(out, pos, upper[i], lower[i]);
+                cursor = x + 1;
+            }
+        }
+
+        pos = encoder.flush(out, pos);
+        if (pos > 0)
+            pos = Sgr.put(out, pos, Sgr.RESET);
+
+        displayed();
+        renderer.rendered(pos);
+        return pos;
+    }
+
+    /**
+     * Same as {@link #encode()} for the char based API, the output being the same once encoded.
+     *
+     * @return the output length, in chars
+     */
+    private int encodeChars() {
+
+        if (charBuffer == null)
+            charBuffer = new char[charSizing.estimate()];
+        char[] out = charBuffer;
+        int pos = 0;
+        // The terminal colors are unknown at the start of a frame
+        encoder.reset();
+
+        for (int row = 0; row < rows; ++row) {
+
+            // Column the cursor is at, -1 when not on this row
+            int cursor = -1;
+            if (pos + rowLength + Sgr.RESET.length > out.length)
+                charBuffer = out = Arrays.copyOf(out, BufferSizing.grow(out.length, pos + rowLength + Sgr.RESET.length));
+
+            for (int x = 0; x < width; ++x) {
+                int i = row * width + x;
+
+                // Leave whatever is displayed, the cell will be redrawn once opaque again
+                if (upper[i] == AbstractImageRenderer.TRANSPARENT)
+                    continue;
+
+                if (hasPrevious && !renderer.differs(prevUpper[i], upper[i]) && !renderer.differs(prevLower[i], lower[i])) {
+                    // Keep what is displayed so small changes can't accumulate
+                    upper[i] = prevUpper[i];
+                    lower[i] = prevLower[i];
+                    continue;
+                }
+
+                if (cursor < 0) {
+                    pos = encoder.flush(out, pos);
+                    pos = Sgr.putCursorPos(out, pos, originRow + row, originCol + x);
+                } else if (cursor < x) {
+                    pos = skip(out, pos, row * width, cursor, x);
+                }
+
+                pos = encoder.cell(out, pos, upper[i], lower[i]);
+                cursor = x + 1;
+            }
+        }
+
+        pos = encoder.flush(out, pos);
+        if (pos > 0)
+            pos = Sgr.put(out, pos, Sgr.RESET);
+
+        displayed();
+        renderer.rendered(out, pos);
+        return pos;
+    }
+
+    /**
+     * The rendered frame is now the displayed one.
+     */
+    private void displayed() {
+        int[] tmp = prevUpper;
+        prevUpper = upper;
+        upper = tmp;
+        tmp = prevLower;
+        prevLower = lower;
+        lower = tmp;
+        hasPrevious = true;
+    }
+
+    /**
+     * Shrink the output buffer if frames have been much shorter for a while, once the output has been used.
+     */
+    private void written(int len) {
+        int capacity = sizing.used(outputBuffer.length, len);
+        if (capacity != outputBuffer.length)
+            outputBuffer = new byte[capacity];
+    }
+
+    /**
+     * Move the cursor from one column to another on the same row,
+     * either by jumping or reprinting unchanged cells, whichever is shorter.
+     *
+     * @return the new position
+     */
+    private int skip(byte[] out, int pos, int rowOffset, int from, int to) {
+
+        int jumpLength = Sgr.moveRightLength(to - from);
+        pos = encoder.flush(out, pos);
+
+        // Each cell takes at least a char, don't bother trying. Transparent cells can't be reprinted.
+        boolean reprint = to - from < jumpLength;
+        for (int x = from; reprint && x < to; ++x)
+            reprint = upper[rowOffset + x] != AbstractImageRenderer.TRANSPARENT;
+
+        if (reprint) {
+            int start = pos;
+            int fg = encoder.fg;
+            int bg = encoder.bg;
+
+            for (int x = from; x < to; ++x)
+                pos = encoder.cell(out, pos, upper[rowOffset + x], lower[rowOffset + x]);
+            pos = encoder.flush(out, pos);
+
+            if (pos - start <= jumpLength)
+                return pos;
+
+            // Rollback
+            pos = start;
+            encoder.fg = fg;
+            encoder.bg = bg;
+        }
+
+        return Sgr.putMoveRight(out, pos, to - from);
+    }
+
+    /**
+     * Same as {@link #skip(byte[], int, int, int, int)} for the char based API, lengths being compared once encoded.
+     *
+     * @return the new position
+     */
+    private int skip(char[] out, int pos, int rowOffset, int from, int to) {
+
+        int jumpLength = Sgr.moveRightLength(to - from);
+        pos = encoder.flush(out, pos);
+
+        // Each cell takes at least a char, don't bother trying. Transparent cells can't be reprinted.
+        boolean reprint = to - from < jumpLength;
+        for (int x = from; reprint && x < to; ++x)
+            reprint = upper[rowOffset + x] != AbstractImageRenderer.TRANSPARENT;
+
+        if (reprint) {
+            int start = pos;
+            int fg = encoder.fg;
+            int bg = encoder.bg;
+
+            for (int x = from; x < to; ++x)
+                pos = encoder.cell(out, pos, upper[rowOffset + x], lower[rowOffset + x]);
+            pos = encoder.flush(out, pos);
+
+            if (Sgr.length(out, start, pos) <= jumpLength)
+                return pos;
+
+            // Rollback
+            pos = start;
+            encoder.fg = fg;
+            encoder.bg = bg;
+        }
+
+        return Sgr.putMoveRight(out, pos, to - from);
+    }
+}
@@ -3,8 +3,11 @@ package tech.guiyom.anscapes.renderer;
 import tech.guiyom.anscapes.ColorMode;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.function.BiConsumer;
 
 public interface ImageRenderer {
@@ -20,6 +23,8 @@ public interface ImageRenderer {
     static ImageRenderer createRenderer(ColorMode cmode, int targetWidth, int targetHeight) {
         if (cmode == ColorMode.ANSI) {
             return new AnsiImageRenderer(targetWidth, targetHeight);
+        } else if (cmode == ColorMode.ANSI256) {
+            return new Ansi256ImageRenderer(targetWidth, targetHeight);
         } else if (cmode == ColorMode.RGB) {
             return new RgbImageRenderer(targetWidth, targetHeight);
         } else {
@@ -36,8 +41,58 @@ public interface ImageRenderer {
 
     void render(ByteBuffer buf, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer);
 
+    /**
+     * Render pixels read in place from a buffer, heap, direct or memory mapped.
+     * Pixels are read from the buffer position, which is left untouched.
+     *
+     * @param buf            the pixel data
+     * @param format         the memory layout of a pixel
+     * @param originalWidth  the image width
+     * @param originalHeight the image height
+     * @param stride         the number of bytes between the start of two rows
+     * @param resultConsumer receives the output buffer and the output length
+     */
+    void render(ByteBuffer buf, PixelFormat format, int originalWidth, int originalHeight, int stride, BiConsumer<char[], Integer> resultConsumer);
+
     void render(IntBuffer buf, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer);
 
+    /**
+     * Render straight to a channel as UTF-8, e.g. {@code new FileOutputStream(FileDescriptor.out).getChannel()}.
+     * Output is written in chunks, without building the whole frame in memory.
+     *
+     * @param data           the pixel array
+     * @param originalWidth  the pixel array width
+     * @param originalHeight the pixel array height
+     * @param channel        a blocking channel
+     */
+    void render(int[] data, int originalWidth, int originalHeight, WritableByteChannel channel) throws IOException;
+
+    /**
+     * Render straight to a stream as UTF-8, in chunks. The stream is flushed at the end of the frame.
+     *
+     * @param data           the pixel array
+     * @param originalWidth  the pixel array width
+     * @param originalHeight the pixel array height
+     * @param out            the output stream
+     */
+    void render(int[] data, int originalWidth, int originalHeight, OutputStream out) throws IOException;
+
+    /**
+     * @see #render(int[], int, int, WritableByteChannel)
+     */
+    void render(BufferedImage image, WritableByteChannel channel) throws IOException;
+
+    /**
+     * @see #render(int[], int, int, OutputStream)
+     */
+    void render(BufferedImage image, OutputStream out) throws IOException;
+
+    /**
+     * @see #render(ByteBuffer, PixelFormat, int, int, int, BiConsumer)
+     * @see #render(int[], int, int, WritableByteChannel)
+     */
+    void render(ByteBuffer buf, PixelFormat format, int originalWidth, int originalHeight, int stride, WritableByteChannel channel) throws IOException;
+
     String renderString(int[] data, int originalWidth, int originalHeight);
 
     String renderString(BufferedImage image);
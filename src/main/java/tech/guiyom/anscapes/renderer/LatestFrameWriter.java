@@ -0,0 +1,233 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes frames to a channel on a background thread, dropping the frames the channel can't keep up with.
+ * <p>
+ * At most one frame waits to be written : a frame submitted while another one is waiting replaces it, so a slow
+ * terminal only lowers the frame rate and the displayed frame is never more than one frame behind the producer.
+ * Frames must be complete, e.g. not {@link FrameDiffRenderer} output, since the changes of a dropped frame would be lost.
+ * <p>
+ * Frames are filled in a buffer owned by the producer, then swapped with the waiting one, so submitting doesn't block
+ * on the channel and only three buffers are ever allocated. Submitting is meant for a single producer thread.
+ */
+public class LatestFrameWriter implements Closeable {
+
+    private final WritableByteChannel channel;
+    private final Thread thread;
+    private final OutputStream stream = new FrameStream();
+
+    // Producer side, frame being filled
+    private byte[] filling = new byte[ByteSink.CHUNK_SIZE];
+    private int fillingLength = 0;
+
+    // Guarded by this, frame waiting to be written
+    private byte[] pending = new byte[ByteSink.CHUNK_SIZE];
+    private int pendingLength = 0;
+    private boolean hasPending = false;
+    private boolean closed = false;
+    private IOException failure;
+
+    private volatile long submitted = 0;
+    private volatile long written = 0;
+    private volatile long dropped = 0;
+
+    /**
+     * @param channel a blocking channel, e.g. the standard output channel
+     */
+    public LatestFrameWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.thread = new Thread(this::run, "anscapes-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * A stream filling the next frame, the frame being submitted on {@link OutputStream#flush()}.
+     * Renderers flush streams once at the end of a frame, e.g. {@link ImageRenderer#render(int[], int, int, OutputStream)}.
+     * When a render fails before the flush, {@link #discard()} must be called so its partial output isn't submitted
+     * with the next frame.
+     *
+     * @return the producer stream, closing it does nothing
+     */
+    public OutputStream stream() {
+        return stream;
+    }
+
+    /**
+     * Render an image and submit it, discarding the partial frame if the render fails.
+     *
+     * @param renderer the renderer
+     * @param image    the image
+     * @throws IOException if a previous write failed
+     */
+    public void render(ImageRenderer renderer, BufferedImage image) throws IOException {
+        try {
+            renderer.render(image, stream);
+        } catch (IOException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the frame being filled through {@link #stream()}, e.g. after a failed render.
+     */
+    public void discard() {
+        fillingLength = 0;
+    }
+
+    /**
+     * Submit a frame, replacing the one waiting to be written if any.
+     *
+     * @param frame  the frame bytes, copied
+     * @param offset the first byte
+     * @param length the number of bytes
+     * @throws IOException if a previous write failed
+     */
+    public void submit(byte[] frame, int offset, int length) throws IOException {
+        append(frame, offset, length);
+        publish();
+    }
+
+    /**
+     * @return the number of frames submitted
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return the number of frames written to the channel
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of frames replaced before being written
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Write the waiting frame if any, then stop the background thread.
+     *
+     * @throws IOException if a write failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (fillingLength + len > filling.length)
+            filling = Arrays.copyOf(filling, Math.max(filling.length * 2, fillingLength + len));
+        System.arraycopy(b, off, filling, fillingLength, len);
+        fillingLength += len;
+    }
+
+    /**
+     * Swap the filled frame with the waiting one.
+     */
+    private synchronized void publish() throws IOException {
+        if (failure != null)
+            throw failure;
+        if (closed)
+            throw new IOException("Writer closed.");
+
+        if (hasPending)
+            ++dropped;
+        byte[] tmp = pending;
+        pending = filling;
+        pendingLength = fillingLength;
+        hasPending = true;
+        filling = tmp;
+        fillingLength = 0;
+        ++submitted;
+        notifyAll();
+    }
+
+    private void run() {
+
+        // Writer side, frame being written
+        byte[] writing = new byte[ByteSink.CHUNK_SIZE];
+
+        while (true) {
+            int length;
+            synchronized (this) {
+                while (!hasPending && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!hasPending)
+                    return;
+                byte[] tmp = writing;
+                writing = pending;
+                length = pendingLength;
+                pending = tmp;
+                hasPending = false;
+            }
+
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(writing, 0, length);
+                while (buf.hasRemaining())
+                    channel.write(buf);
+                ++written;
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Producer stream, filling the next frame.
+     */
+    private final class FrameStream extends OutputStream {
+
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) {
+            single[0] = (byte) b;
+            append(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            append(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fillingLength > 0)
+                publish();
+        }
+    }
+}
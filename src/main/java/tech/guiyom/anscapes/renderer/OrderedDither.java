@@ -0,0 +1,74 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Ordered dithering with an 8x8 Bayer matrix.
+ * <p>
+ * Every pixel is offset by the matrix value at its position, the same for the 3 channels, before being quantized.
+ * Pixels stay independent so rows can still be processed in any order, and the pattern only depends on the position
+ * so a static image is dithered the same way in every frame. Instances are immutable and can be shared between threads.
+ */
+final class OrderedDither {
+
+    private static final int SIZE = 8;
+    // Bayer matrix, values from 0 to 63
+    private static final int[] BAYER = new int[SIZE * SIZE];
+
+    static {
+        BAYER[0] = 0;
+        for (int size = 1; size < SIZE; size *= 2) {
+            // Each quadrant of the next matrix is 4 times the current one plus 0, 2, 3 or 1
+            for (int y = 0; y < size; ++y) {
+                for (int x = 0; x < size; ++x) {
+                    int v = BAYER[y * SIZE + x] * 4;
+                    BAYER[y * SIZE + x] = v;
+                    BAYER[y * SIZE + x + size] = v + 2;
+                    BAYER[(y + size) * SIZE + x] = v + 3;
+                    BAYER[(y + size) * SIZE + x + size] = v + 1;
+                }
+            }
+        }
+    }
+
+    private final int amplitude;
+    // Channel offsets indexed by (y % 8) * 8 + x % 8, centered on 0
+    private final int[] offsets = new int[SIZE * SIZE];
+
+    /**
+     * @param amplitude the spread of the offsets, in channel values
+     */
+    OrderedDither(int amplitude) {
+        this.amplitude = amplitude;
+        for (int i = 0; i < offsets.length; ++i)
+            offsets[i] = ((2 * BAYER[i] + 1 - SIZE * SIZE) * amplitude) / (2 * SIZE * SIZE);
+    }
+
+    int amplitude() {
+        return amplitude;
+    }
+
+    /**
+     * Dither a row of pixels, alpha is kept.
+     *
+     * @param pixels    the source pixels
+     * @param offset    the first pixel of the row
+     * @param out       receives the dithered pixels, can be the source
+     * @param outOffset where to write the dithered pixels
+     * @param length    the row width
+     * @param y         the row position in the image
+     */
+    void apply(int[] pixels, int offset, int[] out, int outOffset, int length, int y) {
+        final int row = (y & (SIZE - 1)) * SIZE;
+        for (int x = 0; x < length; ++x) {
+            int p = pixels[offset + x];
+            int d = offsets[row | (x & (SIZE - 1))];
+            out[outOffset + x] = p & 0xff000000
+                                 | clamp(((p >> 16) & 0xff) + d) << 16
+                                 | clamp(((p >> 8) & 0xff) + d) << 8
+                                 | clamp((p & 0xff) + d);
+        }
+    }
+
+    private static int clamp(int c) {
+        return Math.max(0, Math.min(255, c));
+    }
+}
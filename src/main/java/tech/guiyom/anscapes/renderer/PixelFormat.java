@@ -0,0 +1,50 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Memory layout of a pixel in a byte buffer, channels are listed in memory order whatever the buffer byte order.
+ */
+public enum PixelFormat {
+
+    /**
+     * 4 bytes : blue, green, red, alpha. Little endian ARGB ints.
+     */
+    BGRA(4, 2, 1, 0, 3),
+    /**
+     * 4 bytes : red, green, blue, alpha
+     */
+    RGBA(4, 0, 1, 2, 3),
+    /**
+     * 4 bytes : alpha, red, green, blue. Big endian ARGB ints.
+     */
+    ARGB(4, 1, 2, 3, 0),
+    /**
+     * 3 bytes : red, green, blue
+     */
+    RGB24(3, 0, 1, 2, -1),
+    /**
+     * 3 bytes : blue, green, red
+     */
+    BGR24(3, 2, 1, 0, -1);
+
+    final int bytesPerPixel;
+    // Channel offsets in a pixel, -1 if absent
+    final int r;
+    final int g;
+    final int b;
+    final int a;
+
+    PixelFormat(int bytesPerPixel, int r, int g, int b, int a) {
+        this.bytesPerPixel = bytesPerPixel;
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.a = a;
+    }
+
+    /**
+     * @return the number of bytes of a single pixel
+     */
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+}
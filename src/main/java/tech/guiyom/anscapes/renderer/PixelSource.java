@@ -0,0 +1,321 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Pixels read in place, one row at a time, whatever their memory layout.
+ * Rows are either served straight from the backing int array or converted to ARGB in a scratch buffer.
+ */
+abstract class PixelSource {
+
+    final int width;
+    final int height;
+
+    PixelSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @param data   ARGB pixels
+     * @param width  the image width
+     * @param height the image height
+     * @return a source reading the array in place
+     */
+    static PixelSource of(int[] data, int width, int height) {
+        return new IntArraySource(data, 0, width, width, height, false);
+    }
+
+    /**
+     * @param data   ARGB pixels
+     * @param offset the index of the first pixel
+     * @param stride the number of ints between two rows
+     * @param width  the image width
+     * @param height the image height
+     * @return a source reading the array in place
+     */
+    static PixelSource of(int[] data, int offset, int stride, int width, int height) {
+        return new IntArraySource(data, offset, stride, width, height, false);
+    }
+
+    /**
+     * Pixels are read from the buffer position, which is left untouched.
+     *
+     * @param buf    ARGB ints, either heap, direct or mapped
+     * @param width  the image width
+     * @param height the image height
+     * @return a source reading the buffer in place
+     */
+    static PixelSource of(IntBuffer buf, int width, int height) {
+        if (buf.hasArray())
+            return of(buf.array(), buf.arrayOffset() + buf.position(), width, width, height);
+        return new IntBufferSource(buf, width, height);
+    }
+
+    /**
+     * Pixels are read from the buffer position, which is left untouched.
+     *
+     * @param buf    the pixel bytes, either heap, direct or mapped
+     * @param format the pixel layout
+     * @param width  the image width
+     * @param height the image height
+     * @param stride the number of bytes between two rows
+     * @return a source reading the buffer in place
+     */
+    static PixelSource of(ByteBuffer buf, PixelFormat format, int width, int height, int stride) {
+        if (stride < width * format.bytesPerPixel)
+            throw new IllegalArgumentException("Stride is smaller than a row of pixels.");
+        if (buf.remaining() < (long) stride * (height - 1) + width * format.bytesPerPixel)
+            throw new IllegalArgumentException("Buffer is too small for the given dimensions.");
+        if (buf.hasArray())
+            return new ByteArraySource(buf.array(), buf.arrayOffset() + buf.position(), stride, format.bytesPerPixel,
+                    format.r, format.g, format.b, format.a, width, height);
+        return new ByteBufferSource(buf, format, width, height, stride);
+    }
+
+    /**
+     * Access the raster of common image types directly, without any copy.
+     *
+     * @param image the image
+     * @return a source reading the image raster in place, or null if the image layout isn't supported
+     */
+    static PixelSource of(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (buffer.getNumBanks() != 1)
+            return null;
+        // Non zero when the image is a sub image sharing its parent buffer
+        int tx = -raster.getSampleModelTranslateX();
+        int ty = -raster.getSampleModelTranslateY();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+                    return null;
+                int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+                return new IntArraySource(((DataBufferInt) buffer).getData(),
+                        buffer.getOffset() + ty * stride + tx,
+                        stride,
+                        image.getWidth(),
+                        image.getHeight(),
+                        image.getType() == BufferedImage.TYPE_INT_RGB);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                if (!(raster.getSampleModel() instanceof ComponentSampleModel))
+                    return null;
+                ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+                // Bands are in RGB(A) order whatever the memory order
+                int[] bands = sm.getBandOffsets();
+                return new ByteArraySource(((DataBufferByte) buffer).getData(),
+                        buffer.getOffset() + ty * sm.getScanlineStride() + tx * sm.getPixelStride(),
+                        sm.getScanlineStride(),
+                        sm.getPixelStride(),
+                        bands[0], bands[1], bands[2], bands.length > 3 ? bands[3] : -1,
+                        image.getWidth(),
+                        image.getHeight());
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the backing array if it holds exactly width * height ARGB pixels from index 0, null otherwise
+     */
+    int[] direct() {
+        return null;
+    }
+
+    /**
+     * Get a row of ARGB pixels. Pixels start at {@link #offset(int)}.
+     *
+     * @param y       the row
+     * @param scratch the scratch buffers of the current thread
+     * @return either the backing array or a scratch buffer holding the row
+     */
+    abstract int[] row(int y, Scratch scratch);
+
+    /**
+     * @param y the row
+     * @return the index of the first pixel of the row in the array returned by {@link #row(int, Scratch)}
+     */
+    abstract int offset(int y);
+
+    /**
+     * Packed ARGB ints with a row stride, TYPE_INT_ARGB and TYPE_INT_RGB.
+     */
+    private static final class IntArraySource extends PixelSource {
+
+        private final int[] data;
+        private final int start;
+        private final int stride;
+        // TYPE_INT_RGB leaves alpha bits to 0
+        private final boolean opaque;
+
+        private IntArraySource(int[] data, int start, int stride, int width, int height, boolean opaque) {
+            super(width, height);
+            this.data = data;
+            this.start = start;
+            this.stride = stride;
+            this.opaque = opaque;
+        }
+
+        @Override
+        int[] direct() {
+            return !opaque && start == 0 && stride == width ? data : null;
+        }
+
+        @Override
+        int[] row(int y, Scratch scratch) {
+            if (!opaque)
+                return data;
+            int[] row = scratch.sourceRow(width);
+            int offset = start + y * stride;
+            for (int x = 0; x < width; ++x)
+                row[x] = data[offset + x] | 0xff000000;
+            return row;
+        }
+
+        @Override
+        int offset(int y) {
+            return opaque ? 0 : start + y * stride;
+        }
+    }
+
+    /**
+     * Packed ARGB ints in a buffer without accessible array.
+     */
+    private static final class IntBufferSource extends PixelSource {
+
+        private final IntBuffer buf;
+        private final int start;
+
+        private IntBufferSource(IntBuffer buf, int width, int height) {
+            super(width, height);
+            this.buf = buf;
+            this.start = buf.position();
+        }
+
+        @Override
+        int[] row(int y, Scratch scratch) {
+            int[] row = scratch.sourceRow(width);
+            int offset = start + y * width;
+            for (int x = 0; x < width; ++x)
+                row[x] = buf.get(offset + x);
+            return row;
+        }
+
+        @Override
+        int offset(int y) {
+            return 0;
+        }
+    }
+
+    /**
+     * Any {@link PixelFormat} in a buffer without accessible array, typically direct or mapped.
+     * Four bytes pixels are read as big endian ints then shuffled.
+     */
+    private static final class ByteBufferSource extends PixelSource {
+
+        private final ByteBuffer buf;
+        private final PixelFormat format;
+        private final int start;
+        private final int stride;
+
+        private ByteBufferSource(ByteBuffer buf, PixelFormat format, int width, int height, int stride) {
+            super(width, height);
+            // Our own view so the caller's byte order is left untouched
+            this.buf = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+            this.format = format;
+            this.start = buf.position();
+            this.stride = stride;
+        }
+
+        @Override
+        int[] row(int y, Scratch scratch) {
+            final int[] row = scratch.sourceRow(width);
+            int i = start + y * stride;
+            switch (format) {
+                case ARGB:
+                    for (int x = 0; x < width; ++x, i += 4)
+                        row[x] = buf.getInt(i);
+                    break;
+                case BGRA:
+                    for (int x = 0; x < width; ++x, i += 4)
+                        row[x] = Integer.reverseBytes(buf.getInt(i));
+                    break;
+                case RGBA:
+                    for (int x = 0; x < width; ++x, i += 4)
+                        row[x] = Integer.rotateRight(buf.getInt(i), 8);
+                    break;
+                default:
+                    for (int x = 0; x < width; ++x, i += 3)
+                        row[x] = 0xff000000
+                                         | (buf.get(i + format.r) & 0xff) << 16
+                                         | (buf.get(i + format.g) & 0xff) << 8
+                                         | buf.get(i + format.b) & 0xff;
+            }
+            return row;
+        }
+
+        @Override
+        int offset(int y) {
+            return 0;
+        }
+    }
+
+    /**
+     * Interleaved byte channels, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR and heap byte buffers.
+     */
+    private static final class ByteArraySource extends PixelSource {
+
+        private final byte[] data;
+        private final int start;
+        private final int stride;
+        private final int pixelStride;
+        private final int r;
+        private final int g;
+        private final int b;
+        // -1 when there is no alpha channel
+        private final int a;
+
+        private ByteArraySource(byte[] data, int start, int stride, int pixelStride, int r, int g, int b, int a, int width, int height) {
+            super(width, height);
+            this.data = data;
+            this.start = start;
+            this.stride = stride;
+            this.pixelStride = pixelStride;
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        @Override
+        int[] row(int y, Scratch scratch) {
+            int[] row = scratch.sourceRow(width);
+            int i = start + y * stride;
+            for (int x = 0; x < width; ++x, i += pixelStride) {
+                int alpha = a < 0 ? 0xff : data[i + a] & 0xff;
+                row[x] = alpha << 24 | (data[i + r] & 0xff) << 16 | (data[i + g] & 0xff) << 8 | data[i + b] & 0xff;
+            }
+            return row;
+        }
+
+        @Override
+        int offset(int y) {
+            return 0;
+        }
+    }
+}
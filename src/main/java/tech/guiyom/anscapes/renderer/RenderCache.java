@@ -0,0 +1,294 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache of rendered images, for images rendered over and over like avatars or logos.
+ * <p>
+ * Entries are keyed by a 128 bits hash of the pixels and by the renderer parameters : color mode, target size, bias,
+ * palette, dithering and so on. A hit costs a single pass over the pixels to hash them, instead of resizing and
+ * quantizing them. Entries are kept as UTF-8, the {@link TerminalImage} being built on first request and kept too.
+ * The cache is bounded by the total size of the entries, evicting the least recently used ones first.
+ * <p>
+ * Pixels are never compared, two images with the same hash get the same output. The hash is seeded randomly for each
+ * cache so colliding images can't be prepared in advance, but it is not a cryptographic hash : when images come from
+ * clients that must never see each other's images, give each of them its own cache.
+ * <p>
+ * The cache is thread safe, the renderers used with it are not.
+ */
+public class RenderCache {
+
+    // Odd multipliers of the two pixel hashes
+    private static final long M0 = 0xff51afd7ed558ccdL;
+    private static final long M1 = 0xc4ceb9fe1a85ec53L;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final long maxBytes;
+    private final long seed0;
+    private final long seed1;
+    // Guarded by this, in access order
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictedBytes = 0;
+
+    /**
+     * @param maxBytes the maximum total size of the entries, an image larger than this is never cached
+     */
+    public RenderCache(long maxBytes) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Cache size should be positive.");
+        this.maxBytes = maxBytes;
+        SecureRandom random = new SecureRandom();
+        this.seed0 = random.nextLong();
+        this.seed1 = random.nextLong();
+    }
+
+    /**
+     * Render an image, or get it from the cache.
+     *
+     * @param renderer the renderer used on a miss, which parameters are part of the key
+     * @param image    the image
+     * @return the rendered image
+     */
+    public TerminalImage render(AbstractImageRenderer renderer, BufferedImage image) {
+        return image(renderer, AbstractImageRenderer.source(image));
+    }
+
+    /**
+     * @see #render(AbstractImageRenderer, BufferedImage)
+     */
+    public TerminalImage render(AbstractImageRenderer renderer, int[] data, int originalWidth, int originalHeight) {
+        return image(renderer, PixelSource.of(data, originalWidth, originalHeight));
+    }
+
+    /**
+     * Render an image straight to a channel as UTF-8, from the cache if possible.
+     *
+     * @param renderer the renderer used on a miss, which parameters are part of the key
+     * @param image    the image
+     * @param channel  a blocking channel
+     */
+    public void render(AbstractImageRenderer renderer, BufferedImage image, WritableByteChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(entry(renderer, AbstractImageRenderer.source(image)).payload);
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+    /**
+     * Render an image straight to a stream as UTF-8, from the cache if possible. The stream is flushed.
+     *
+     * @param renderer the renderer used on a miss, which parameters are part of the key
+     * @param image    the image
+     * @param out      the output stream
+     */
+    public void render(AbstractImageRenderer renderer, BufferedImage image, OutputStream out) throws IOException {
+        out.write(entry(renderer, AbstractImageRenderer.source(image)).payload);
+        out.flush();
+    }
+
+    /**
+     * @return the number of renders served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of renders not found in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the total size of the entries evicted to make room for new ones, in bytes
+     */
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return the current total size of the entries, in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove every entry, without counting them as evicted.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private TerminalImage image(AbstractImageRenderer renderer, PixelSource source) {
+        Entry entry = entry(renderer, source);
+        synchronized (this) {
+            TerminalImage image = entry.image;
+            if (image == null) {
+                image = new TerminalImage(new String(entry.payload, StandardCharsets.UTF_8),
+                        renderer.targetWidth, renderer.targetHeight, renderer.colorMode);
+                // Strings of the output are stored on 2 bytes per char
+                long size = 2L * image.getSequence().length();
+                if (entries.get(entry.key) == entry && entry.size + size <= maxBytes) {
+                    entry.image = image;
+                    grow(entry, size);
+                }
+            }
+            return image;
+        }
+    }
+
+    private Entry entry(AbstractImageRenderer renderer, PixelSource source) {
+
+        long[] hash = hash(source, seed0, seed1);
+        Key key = new Key(hash[0], hash[1], source.width, source.height, renderer.parameters());
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                ++hits;
+                return entry;
+            }
+            ++misses;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            renderer.render(source, out);
+        } catch (IOException e) {
+            // Writing to memory can't fail
+            throw new UncheckedIOException(e);
+        }
+
+        Entry entry = new Entry(key, out.toByteArray());
+        if (entry.payload.length > maxBytes)
+            return entry;
+        synchronized (this) {
+            // Rendered concurrently by another thread
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing != null)
+                return existing;
+            grow(entry, entry.payload.length);
+            return entry;
+        }
+    }
+
+    /**
+     * Account for the new size of an entry, the most recently used one, and evict the least recently used ones if needed.
+     */
+    private void grow(Entry entry, long size) {
+        entry.size += size;
+        bytes += size;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes) {
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.size;
+            evictedBytes += eldest.size;
+        }
+    }
+
+    /**
+     * Two independent 64 bits hashes of the pixels, computed in a single pass. Pixels are mixed with a multiplication
+     * and a rotation in 4 lanes per hash, so the multiplications of consecutive pixels don't wait for each other.
+     */
+    static long[] hash(PixelSource source, long seed0, long seed1) {
+        final Scratch scratch = SCRATCH.get();
+        long a0 = seed0, a1 = seed0 ^ 0x9e3779b97f4a7c15L, a2 = seed0 ^ 0xbf58476d1ce4e5b9L, a3 = seed0 ^ 0x94d049bb133111ebL;
+        long b0 = seed1, b1 = seed1 ^ 0x9e3779b97f4a7c15L, b2 = seed1 ^ 0xbf58476d1ce4e5b9L, b3 = seed1 ^ 0x94d049bb133111ebL;
+        for (int y = 0; y < source.height; ++y) {
+            final int[] row = source.row(y, scratch);
+            final int offset = source.offset(y);
+            final int end = offset + source.width;
+            int x = offset;
+            for (; x + 3 < end; x += 4) {
+                final int p0 = row[x], p1 = row[x + 1], p2 = row[x + 2], p3 = row[x + 3];
+                a0 = Long.rotateLeft((a0 ^ p0) * M0, 29);
+                a1 = Long.rotateLeft((a1 ^ p1) * M0, 29);
+                a2 = Long.rotateLeft((a2 ^ p2) * M0, 29);
+                a3 = Long.rotateLeft((a3 ^ p3) * M0, 29);
+                b0 = Long.rotateLeft((b0 ^ p0) * M1, 31);
+                b1 = Long.rotateLeft((b1 ^ p1) * M1, 31);
+                b2 = Long.rotateLeft((b2 ^ p2) * M1, 31);
+                b3 = Long.rotateLeft((b3 ^ p3) * M1, 31);
+            }
+            for (; x < end; ++x) {
+                a0 = Long.rotateLeft((a0 ^ row[x]) * M0, 29);
+                b0 = Long.rotateLeft((b0 ^ row[x]) * M1, 31);
+            }
+        }
+        return new long[]{combine(a0, a1, a2, a3, M0), combine(b0, b1, b2, b3, M1)};
+    }
+
+    private static long combine(long h0, long h1, long h2, long h3, long m) {
+        long h = h0;
+        h = Long.rotateLeft((h ^ h1) * m, 29);
+        h = Long.rotateLeft((h ^ h2) * m, 29);
+        h = Long.rotateLeft((h ^ h3) * m, 29);
+        return h ^ (h >>> 32);
+    }
+
+    private static final class Key {
+
+        private final long hash0;
+        private final long hash1;
+        private final int width;
+        private final int height;
+        private final Object parameters;
+
+        private Key(long hash0, long hash1, int width, int height, Object parameters) {
+            this.hash0 = hash0;
+            this.hash1 = hash1;
+            this.width = width;
+            this.height = height;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hash0 == other.hash0 && hash1 == other.hash1 && width == other.width && height == other.height && parameters.equals(other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash0) * 31 + parameters.hashCode();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+        private final byte[] payload;
+        // Built on first request
+        private TerminalImage image;
+        private long size;
+
+        private Entry(Key key, byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+}
@@ -1,15 +1,10 @@
 package tech.guiyom.anscapes.renderer;
 
-import tech.guiyom.anscapes.Anscapes;
-import tech.guiyom.anscapes.AnsiColor;
+import tech.guiyom.anscapes.ColorMetric;
 import tech.guiyom.anscapes.ColorMode;
 
-import java.util.function.BiConsumer;
-
 public class RgbImageRenderer extends AbstractImageRenderer {
 
-    private final int bias;
-
     /**
      * Create a new ImageRenderer that render images with 24bit colors.
      * Default to a bias of 0.
@@ -29,62 +24,45 @@ public class RgbImageRenderer extends AbstractImageRenderer {
      * @param bias
      */
     public RgbImageRenderer(int targetWidth, int targetHeight, int bias) {
-        super(ColorMode.RGB, targetWidth, targetHeight);
-        this.bias = bias;
+        this(targetWidth, targetHeight, bias, ColorMetric.RGB);
     }
 
-    // TODO control background color when dealing with transparent images
+    /**
+     * Create a new ImageRenderer that render images with 24bit colors.
+     *
+     * @param targetWidth
+     * @param targetHeight
+     * @param bias         the distance under which a color is not updated, in the unit of the metric
+     * @param metric       the distance used to compare colors, {@link ColorMetric#LAB} keeps the bias uniform across hues
+     */
+    public RgbImageRenderer(int targetWidth, int targetHeight, int bias, ColorMetric metric) {
+        super(ColorMode.RGB, targetWidth, targetHeight);
+        setBias(bias, metric);
+    }
 
+    /**
+     * Pick the bias of every frame to fit a byte budget, e.g. {@code BiasController.perSecond(2_000_000)}.
+     *
+     * @param controller the controller, null to keep the current bias from now on
+     */
     @Override
-    public void render(int[] data, int originalWidth, int originalHeight, BiConsumer<char[], Integer> resultConsumer) {
-
-        // Resize if needed
-        if (originalWidth != targetWidth || originalHeight != targetHeight) {
-            resize(data, originalWidth, originalHeight);
-            data = resizeBuffer;
-        }
-
-        this.outputBuffer.reset();
-        AnsiColor prevUpper = null;
-        AnsiColor prevLower = null;
-
-        for (int i = 0; i < targetHeight / 2; ++i) {
-
-            int y = i * 2;
-            for (int x = 0; x < targetWidth; ++x) {
-                AnsiColor upper = Anscapes.rgb(data[y * targetHeight + x]);
-                AnsiColor lower = null;
-                if (y + 1 < targetHeight) {
-                    lower = Anscapes.rgb(data[y * targetHeight + targetHeight + x]);
-                } else {
-                    lower = Anscapes.Colors.BLACK;
-                }
-
-                if (bias == 0) {
-                    if (!upper.equals(prevUpper))
-                        outputBuffer.put(upper.fg());
-                    if (!lower.equals(prevLower))
-                        outputBuffer.put(lower.bg());
-                } else {
-                    if (upper.diffBiased(prevUpper, bias))
-                        outputBuffer.put(upper.fg());
-                    if (lower.diffBiased(prevLower, bias))
-                        outputBuffer.put(lower.bg());
-                }
-
-                outputBuffer.put(CHAR_TOP);
-
-                prevUpper = upper;
-                prevLower = lower;
-            }
+    public void setBiasController(BiasController controller) {
+        super.setBiasController(controller);
+    }
 
-            outputBuffer.put(Anscapes.RESET);
-            outputBuffer.put(System.lineSeparator());
+    @Override
+    protected void quantizeRow(int[] pixels, int offset, int[] colors, int colorsOffset, int length) {
+        for (int i = 0; i < length; ++i)
+            colors[colorsOffset + i] = pixels[offset + i] & 0xffffff;
+    }
 
-            prevUpper = null;
-            prevLower = null;
-        }
+    @Override
+    protected int putFg(byte[] out, int pos, int color) {
+        return Sgr.putRgb(out, pos, '3', color);
+    }
 
-        resultConsumer.accept(outputBuffer.array(), outputBuffer.position());
+    @Override
+    protected int putBg(byte[] out, int pos, int color) {
+        return Sgr.putRgb(out, pos, '4', color);
     }
 }
@@ -0,0 +1,16 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Algorithm used to resize images to the target size.
+ */
+public enum Scaling {
+
+    /**
+     * Pick the nearest pixel, fastest but aliases when downscaling
+     */
+    NEAREST,
+    /**
+     * Average all the pixels covered by a target pixel, smoother output that compresses better with a bias
+     */
+    AREA
+}
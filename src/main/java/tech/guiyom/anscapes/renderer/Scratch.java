@@ -0,0 +1,37 @@
+package tech.guiyom.anscapes.renderer;
+
+/**
+ * Per thread scratch buffers used while resizing, grown on demand and reused across frames.
+ */
+final class Scratch {
+
+    private int[] sourceRow = new int[0];
+    private int[] sums = new int[0];
+
+    /**
+     * @param width the number of pixels in a source row
+     * @return a buffer able to hold a row of source pixels
+     */
+    int[] sourceRow(int width) {
+        if (sourceRow.length < width)
+            sourceRow = new int[width];
+        return sourceRow;
+    }
+
+    /**
+     * @param length the number of sums needed
+     * @return a buffer able to hold the sums, not cleared
+     */
+    int[] sums(int length) {
+        if (sums.length < length)
+            sums = new int[length];
+        return sums;
+    }
+
+    /**
+     * @return the number of bytes retained by the buffers
+     */
+    long retainedBytes() {
+        return 4L * (sourceRow.length + sums.length);
+    }
+}
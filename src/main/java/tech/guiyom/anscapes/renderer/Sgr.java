@@ -0,0 +1,313 @@
+package tech.guiyom.anscapes.renderer;
+
+import tech.guiyom.anscapes.Anscapes;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation free helpers to write ansi sequences directly into a byte array, as UTF-8.
+ * Sequences are also written into char arrays for the char based API, the output being the same once encoded.
+ */
+final class Sgr {
+
+    static final byte[] RESET = ascii(Anscapes.RESET);
+    static final byte[] LINE_SEPARATOR = ascii(System.lineSeparator());
+
+    /**
+     * Decimal representation of every number from 0 to 255, 4 bytes per entry : the length then the digits.
+     */
+    private static final byte[] DIGITS = new byte[256 * 4];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            byte[] s = ascii(Integer.toString(i));
+            DIGITS[i * 4] = (byte) s.length;
+            System.arraycopy(s, 0, DIGITS, i * 4 + 1, s.length);
+        }
+    }
+
+    private Sgr() {
+    }
+
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the number of bytes of a char once encoded in UTF-8, chars used here are either ascii or take 3 bytes
+     */
+    static int length(char c) {
+        return c < 0x80 ? 1 : 3;
+    }
+
+    /**
+     * Write a char in UTF-8. Only supports ascii and chars from the basic multilingual plane above U+0800,
+     * which covers the block chars.
+     *
+     * @return the new position
+     */
+    static int putChar(byte[] out, int pos, char c) {
+        if (c < 0x80) {
+            out[pos] = (byte) c;
+            return pos + 1;
+        }
+        out[pos] = (byte) (0xe0 | c >> 12);
+        out[pos + 1] = (byte) (0x80 | (c >> 6) & 0x3f);
+        out[pos + 2] = (byte) (0x80 | c & 0x3f);
+        return pos + 3;
+    }
+
+    /**
+     * Same as {@link #putChar(byte[], int, char)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putChar(char[] out, int pos, char c) {
+        out[pos] = c;
+        return pos + 1;
+    }
+
+    /**
+     * @return the number of bytes of chars once encoded in UTF-8
+     */
+    static int length(char[] out, int from, int to) {
+        int len = to - from;
+        for (int i = from; i < to; ++i) {
+            if (out[i] >= 0x80)
+                len += 2;
+        }
+        return len;
+    }
+
+    /**
+     * Write a number between 0 and 255.
+     *
+     * @return the new position
+     */
+    static int putByte(byte[] out, int pos, int value) {
+        int i = value * 4;
+        int len = DIGITS[i];
+        out[pos] = DIGITS[i + 1];
+        if (len > 1) {
+            out[pos + 1] = DIGITS[i + 2];
+            if (len > 2)
+                out[pos + 2] = DIGITS[i + 3];
+        }
+        return pos + len;
+    }
+
+    /**
+     * Same as {@link #putByte(byte[], int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putByte(char[] out, int pos, int value) {
+        int i = value * 4;
+        int len = DIGITS[i];
+        out[pos] = (char) DIGITS[i + 1];
+        if (len > 1) {
+            out[pos + 1] = (char) DIGITS[i + 2];
+            if (len > 2)
+                out[pos + 2] = (char) DIGITS[i + 3];
+        }
+        return pos + len;
+    }
+
+    /**
+     * Write a positive number.
+     *
+     * @return the new position
+     */
+    static int putInt(byte[] out, int pos, int value) {
+        if (value < 256)
+            return putByte(out, pos, value);
+        int len = digits(value);
+        for (int i = pos + len - 1; i >= pos; --i) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + len;
+    }
+
+    /**
+     * Same as {@link #putInt(byte[], int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putInt(char[] out, int pos, int value) {
+        if (value < 256)
+            return putByte(out, pos, value);
+        int len = digits(value);
+        for (int i = pos + len - 1; i >= pos; --i) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + len;
+    }
+
+    /**
+     * @return the number of decimal digits of a positive number
+     */
+    static int digits(int value) {
+        int len = 1;
+        while (value >= 10) {
+            value /= 10;
+            ++len;
+        }
+        return len;
+    }
+
+    /**
+     * Write a cursor position sequence, {@code CSI row;col H}.
+     *
+     * @return the new position
+     * @see Anscapes#cursorPos(int, int)
+     */
+    static int putCursorPos(byte[] out, int pos, int row, int col) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, row);
+        out[pos++] = ';';
+        pos = putInt(out, pos, col);
+        out[pos++] = 'H';
+        return pos;
+    }
+
+    /**
+     * Same as {@link #putCursorPos(byte[], int, int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putCursorPos(char[] out, int pos, int row, int col) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, row);
+        out[pos++] = ';';
+        pos = putInt(out, pos, col);
+        out[pos++] = 'H';
+        return pos;
+    }
+
+    /**
+     * Write a cursor forward sequence, {@code CSI n C}.
+     *
+     * @return the new position
+     * @see Anscapes#moveRight(int)
+     */
+    static int putMoveRight(byte[] out, int pos, int n) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, n);
+        out[pos++] = 'C';
+        return pos;
+    }
+
+    /**
+     * Same as {@link #putMoveRight(byte[], int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putMoveRight(char[] out, int pos, int n) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, n);
+        out[pos++] = 'C';
+        return pos;
+    }
+
+    /**
+     * @return the length of {@link #putMoveRight(byte[], int, int)} output
+     */
+    static int moveRightLength(int n) {
+        return 3 + digits(n);
+    }
+
+    /**
+     * Write a repeat sequence, {@code CSI n b}.
+     *
+     * @return the new position
+     * @see Anscapes#repeat(int)
+     */
+    static int putRepeat(byte[] out, int pos, int n) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, n);
+        out[pos++] = 'b';
+        return pos;
+    }
+
+    /**
+     * Same as {@link #putRepeat(byte[], int, int)} for the char based API.
+     *
+     * @return the new position
+     */
+    static int putRepeat(char[] out, int pos, int n) {
+        out[pos] = '\33';
+        out[pos + 1] = '[';
+        pos = putInt(out, pos + 2, n);
+        out[pos++] = 'b';
+        return pos;
+    }
+
+    /**
+     * @return the length of {@link #putRepeat(byte[], int, int)} output
+     */
+    static int repeatLength(int n) {
+        return 3 + digits(n);
+    }
+
+    /**
+     * Write the parameters of a 24 bit color, {@code 38;2;r;g;b} or {@code 48;2;r;g;b}.
+     *
+     * @param out    the output buffer
+     * @param pos    the position to write at
+     * @param ground '3' for foreground, '4' for background
+     * @param rgb    the packed rgb color, alpha is ignored
+     * @return the new position
+     */
+    static int putRgb(byte[] out, int pos, char ground, int rgb) {
+        out[pos] = (byte) ground;
+        out[pos + 1] = '8';
+        out[pos + 2] = ';';
+        out[pos + 3] = '2';
+        out[pos + 4] = ';';
+        pos = putByte(out, pos + 5, (rgb >> 16) & 0xff);
+        out[pos++] = ';';
+        pos = putByte(out, pos, (rgb >> 8) & 0xff);
+        out[pos++] = ';';
+        return putByte(out, pos, rgb & 0xff);
+    }
+
+    /**
+     * Copy a precomputed sequence.
+     *
+     * @return the new position
+     */
+    static int put(byte[] out, int pos, byte[] seq) {
+        System.arraycopy(seq, 0, out, pos, seq.length);
+        return pos + seq.length;
+    }
+
+    /**
+     * Copy an ascii sequence for the char based API.
+     *
+     * @param out the output buffer
+     * @param pos the position to write at
+     * @param seq the ascii bytes
+     * @param off the first byte to copy
+     * @param len the number of bytes to copy
+     * @return the new position
+     */
+    static int put(char[] out, int pos, byte[] seq, int off, int len) {
+        for (int i = 0; i < len; ++i)
+            out[pos + i] = (char) seq[off + i];
+        return pos + len;
+    }
+
+    /**
+     * @see #put(char[], int, byte[], int, int)
+     */
+    static int put(char[] out, int pos, byte[] seq) {
+        return put(out, pos, seq, 0, seq.length);
+    }
+}
@@ -0,0 +1,316 @@
+package tech.guiyom.anscapes.renderer;
+
+import tech.guiyom.anscapes.ColorMode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file of pre-rendered frames, so an animation can be replayed without rendering it again.
+ * <p>
+ * The file starts with a header, followed by the UTF-8 payload of every frame, as written to the terminal,
+ * then by the frame index. Numbers are big endian.
+ * <pre>
+ * header : magic "ANSC", version (int), color depth in bits (int), frame count (int), index position (long)
+ * frame  : offset (long), timestamp in milliseconds (long), length (int), width (int), height (int)
+ * </pre>
+ * Files are memory mapped for reading, frames are written to a channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * so the payloads are never copied to the heap, e.g. {@code new FileOutputStream(FileDescriptor.out).getChannel()}.
+ * An opened file is immutable and can be read by multiple threads.
+ */
+public final class TerminalImageFile implements Closeable {
+
+    private static final int MAGIC = 'A' << 24 | 'N' << 16 | 'S' << 8 | 'C';
+    // Version 1 stored the color mode ordinal, which changed when ANSI256 was added
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 4 + 8;
+    private static final int ENTRY_LENGTH = 8 + 8 + 4 + 4 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final ColorMode colorMode;
+    private final int frameCount;
+    private final int indexPosition;
+
+    private TerminalImageFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("File too large to be mapped : " + size + " bytes.");
+        if (size < HEADER_LENGTH)
+            throw new IOException("Not a terminal image file.");
+        this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (mapped.getInt(0) != MAGIC)
+            throw new IOException("Not a terminal image file.");
+        if (mapped.getInt(4) != VERSION)
+            throw new IOException("Unsupported terminal image file version : " + mapped.getInt(4));
+        this.colorMode = colorMode(mapped.getInt(8));
+        this.frameCount = mapped.getInt(12);
+        long index = mapped.getLong(16);
+        if (frameCount < 0 || index < HEADER_LENGTH || index + (long) frameCount * ENTRY_LENGTH > size)
+            throw new IOException("Corrupted frame index.");
+        this.indexPosition = (int) index;
+
+        for (int i = 0; i < frameCount; ++i) {
+            long offset = offset(i);
+            if (offset < HEADER_LENGTH || length(i) < 0 || offset + length(i) > index)
+                throw new IOException("Corrupted frame index entry " + i + '.');
+        }
+    }
+
+    /**
+     * Open a file for playback.
+     *
+     * @param path the file
+     * @return the opened file, to be closed
+     */
+    public static TerminalImageFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new TerminalImageFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a file, replacing any existing one.
+     *
+     * @param path      the file
+     * @param colorMode the color mode of the frames
+     * @return the writer, the file is complete once closed
+     */
+    public static Writer create(Path path, ColorMode colorMode) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            return new Writer(channel, colorMode);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ColorMode getColorMode() {
+        return colorMode;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @param frame the frame index
+     * @return the time the frame should be displayed at, in milliseconds since the first one
+     */
+    public long getTimestamp(int frame) {
+        return mapped.getLong(entry(frame) + 8);
+    }
+
+    /**
+     * @param frame the frame index
+     * @return the payload length, in bytes
+     */
+    public int getLength(int frame) {
+        return length(frame);
+    }
+
+    public int getWidth(int frame) {
+        return mapped.getInt(entry(frame) + 20);
+    }
+
+    public int getHeight(int frame) {
+        return mapped.getInt(entry(frame) + 24);
+    }
+
+    /**
+     * @param frame the frame index
+     * @return a read-only view of the mapped payload
+     */
+    public ByteBuffer getFrame(int frame) {
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) offset(frame));
+        view.limit((int) offset(frame) + length(frame));
+        return view.slice();
+    }
+
+    /**
+     * @param frame the frame index
+     * @return the frame decoded to a {@link TerminalImage}
+     */
+    public TerminalImage getImage(int frame) {
+        return new TerminalImage(StandardCharsets.UTF_8.decode(getFrame(frame)).toString(), getWidth(frame), getHeight(frame), colorMode);
+    }
+
+    /**
+     * Write a frame payload to a channel, without copying it to the heap.
+     *
+     * @param frame  the frame index
+     * @param target a blocking channel
+     */
+    public void transferFrame(int frame, WritableByteChannel target) throws IOException {
+        long position = offset(frame);
+        long end = position + length(frame);
+        while (position < end)
+            position += channel.transferTo(position, end - position, target);
+    }
+
+    /**
+     * Write every frame to a channel at its timestamp, blocking until the last one is written.
+     * Frames are not skipped when the channel is too slow, they are then written as fast as possible.
+     *
+     * @param target a blocking channel
+     */
+    public void play(WritableByteChannel target) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < frameCount; ++i) {
+            long wait = start + TimeUnit.MILLISECONDS.toNanos(getTimestamp(i)) - System.nanoTime();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+            transferFrame(i, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The color depth identifies the mode in the header, unlike the ordinal it doesn't depend on the enum order.
+     */
+    private static int colorDepth(ColorMode colorMode) {
+        switch (colorMode) {
+            case ANSI:
+                return 4;
+            case ANSI256:
+                return 8;
+            case RGB:
+                return 24;
+            default:
+                throw new IllegalArgumentException("Unsupported color mode : " + colorMode);
+        }
+    }
+
+    private static ColorMode colorMode(int colorDepth) throws IOException {
+        for (ColorMode colorMode : ColorMode.values()) {
+            if (colorDepth(colorMode) == colorDepth)
+                return colorMode;
+        }
+        throw new IOException("Invalid color depth : " + colorDepth);
+    }
+
+    private int entry(int frame) {
+        if (frame < 0 || frame >= frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of " + frameCount);
+        return indexPosition + frame * ENTRY_LENGTH;
+    }
+
+    private long offset(int frame) {
+        return mapped.getLong(entry(frame));
+    }
+
+    private int length(int frame) {
+        return mapped.getInt(entry(frame) + 16);
+    }
+
+    /**
+     * Appends frames to a new file. The index is kept in memory and written when closing.
+     * Not thread safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ColorMode colorMode;
+        // Index entries of the frames written so far
+        private ByteBuffer index = ByteBuffer.allocate(64 * ENTRY_LENGTH);
+        private int frameCount = 0;
+        private long position = HEADER_LENGTH;
+        private long lastTimestamp = 0;
+
+        private Writer(FileChannel channel, ColorMode colorMode) throws IOException {
+            this.channel = channel;
+            this.colorMode = colorMode;
+            // Header is written last, once the index position is known
+            channel.position(HEADER_LENGTH);
+        }
+
+        /**
+         * @param image     a rendered frame, of the color mode of the file
+         * @param timestamp the time the frame should be displayed at, in milliseconds since the first one
+         */
+        public void append(TerminalImage image, long timestamp) throws IOException {
+            if (image.getColorMode() != colorMode)
+                throw new IllegalArgumentException("Expected a " + colorMode + " image, got " + image.getColorMode() + '.');
+            append(ByteBuffer.wrap(image.getSequence().getBytes(StandardCharsets.UTF_8)), timestamp, image.getWidth(), image.getHeight());
+        }
+
+        /**
+         * Append the remaining bytes of a buffer, e.g. the output of a {@link FrameDiffRenderer}.
+         *
+         * @param payload   the frame, as written to the terminal in UTF-8
+         * @param timestamp the time the frame should be displayed at, in milliseconds since the first one
+         * @param width     the frame width
+         * @param height    the frame height
+         */
+        public void append(ByteBuffer payload, long timestamp, int width, int height) throws IOException {
+            if (!channel.isOpen())
+                throw new IllegalStateException("Writer closed.");
+            if (timestamp < lastTimestamp)
+                throw new IllegalArgumentException("Timestamps should not decrease : " + timestamp + " < " + lastTimestamp);
+
+            int length = payload.remaining();
+            while (payload.hasRemaining())
+                channel.write(payload);
+
+            if (index.remaining() < ENTRY_LENGTH)
+                index = ByteBuffer.allocate(index.capacity() * 2).put(index.flip());
+            index.putLong(position).putLong(timestamp).putInt(length).putInt(width).putInt(height);
+            position += length;
+            lastTimestamp = timestamp;
+            ++frameCount;
+        }
+
+        /**
+         * @see #append(ByteBuffer, long, int, int)
+         */
+        public void append(byte[] payload, int offset, int length, long timestamp, int width, int height) throws IOException {
+            append(ByteBuffer.wrap(payload, offset, length), timestamp, width, height);
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * Write the index and the header.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!channel.isOpen())
+                return;
+            try {
+                index.flip();
+                while (index.hasRemaining())
+                    channel.write(index);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).putInt(VERSION).putInt(colorDepth(colorMode)).putInt(frameCount).putLong(position).flip();
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
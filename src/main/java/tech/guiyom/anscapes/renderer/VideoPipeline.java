@@ -0,0 +1,325 @@
+package tech.guiyom.anscapes.renderer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Renders a video with each step on its own thread : frame N + 1 is scaled while frame N is encoded and frame N - 1
+ * is written, so the throughput is the one of the slowest stage instead of the sum of all of them.
+ * <p>
+ * Stages share a ring of frame slots, every buffer being allocated once in the constructor. A stage processes a slot
+ * once the previous stage is done with it, and the decoder reuses a slot once it has been written, so at most
+ * {@code slots} frames are in flight. Frames are drawn entirely, starting at {@link #setOrigin(int, int)}.
+ * <p>
+ * The renderer gives the scaling, quantization and encoding settings. It must not be used elsewhere while the pipeline
+ * is running. A pipeline is started once.
+ */
+public class VideoPipeline implements Closeable {
+
+    /**
+     * Steps of the rendering of a frame, in order, each one running on its own thread.
+     */
+    public enum Stage {
+        DECODE,
+        SCALE,
+        QUANTIZE,
+        ENCODE,
+        WRITE
+    }
+
+    /**
+     * Produces the frames of a video.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+
+        /**
+         * Decode the next frame.
+         *
+         * @param pixels receives the frame pixels in ARGB, at the source size of the pipeline
+         * @return false at the end of the video, pixels being ignored
+         */
+        boolean decode(int[] pixels) throws IOException;
+    }
+
+    // Maximum length of a cursor position sequence
+    private static final int MAX_JUMP_LENGTH = 2 + 10 + 1 + 10 + 1;
+    private static final Stage[] STAGES = Stage.values();
+
+    private final AbstractImageRenderer renderer;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int width;
+    private final int rows;
+    private final Slot[] slots;
+    // Number of frames each stage is done with
+    private final Sequence[] done = new Sequence[STAGES.length];
+    private final AtomicLongArray busyNanos = new AtomicLongArray(STAGES.length);
+    private final Thread[] threads = new Thread[STAGES.length];
+    private volatile Throwable failure;
+    private volatile boolean closed = false;
+    // 1-based terminal position of the image top left corner
+    private int originRow = 1;
+    private int originCol = 1;
+
+    /**
+     * @param renderer     the renderer giving the target size and the rendering settings
+     * @param sourceWidth  the width of the decoded frames
+     * @param sourceHeight the height of the decoded frames
+     * @param slots        the number of frames in flight, at least one per stage to keep them all busy
+     */
+    public VideoPipeline(AbstractImageRenderer renderer, int sourceWidth, int sourceHeight, int slots) {
+        if (slots < 1)
+            throw new IllegalArgumentException("At least one slot is needed.");
+        this.renderer = renderer;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.width = renderer.targetWidth;
+        this.rows = renderer.targetHeight / 2;
+        this.slots = new Slot[slots];
+        for (int i = 0; i < slots; ++i)
+            this.slots[i] = new Slot();
+        for (int i = 0; i < done.length; ++i)
+            done[i] = new Sequence();
+    }
+
+    /**
+     * Same as {@link #VideoPipeline(AbstractImageRenderer, int, int, int)} with two slots per stage.
+     */
+    public VideoPipeline(AbstractImageRenderer renderer, int sourceWidth, int sourceHeight) {
+        this(renderer, sourceWidth, sourceHeight, 2 * STAGES.length);
+    }
+
+    /**
+     * Set where frames are drawn on the terminal, before starting.
+     *
+     * @param row the 1-based terminal row of the image top left corner
+     * @param col the 1-based terminal column of the image top left corner
+     */
+    public void setOrigin(int row, int col) {
+        this.originRow = Math.max(row, 1);
+        this.originCol = Math.max(col, 1);
+    }
+
+    /**
+     * Start the stage threads, rendering frames until the decoder reaches the end of the video.
+     *
+     * @param decoder the source of the frames, called on its own thread
+     * @param channel a blocking channel the frames are written to as UTF-8, e.g. the standard output channel
+     */
+    public synchronized void start(Decoder decoder, WritableByteChannel channel) {
+
+        if (threads[0] != null)
+            throw new IllegalStateException("Pipeline already started.");
+
+        final Scratch scratch = new Scratch();
+        final CellEncoder quantizeEncoder = new CellEncoder(renderer, width);
+        final CellEncoder encoder = new CellEncoder(renderer, width);
+        final ByteSink.ChannelSink sink = new ByteSink.ChannelSink();
+        sink.setChannel(channel);
+
+        startStage(Stage.DECODE, slot -> {
+            slot.end = !decoder.decode(slot.pixels);
+        });
+        startStage(Stage.SCALE, slot -> {
+            if (slot.scaled != null)
+                renderer.resize(PixelSource.of(slot.pixels, sourceWidth, sourceHeight), slot.scaled, scratch);
+        });
+        startStage(Stage.QUANTIZE, slot -> {
+            int[] frame = slot.scaled == null ? slot.pixels : slot.scaled;
+            for (int row = 0; row < rows; ++row)
+                renderer.quantizeCells(frame, row, quantizeEncoder, slot.upper, slot.lower, row * width);
+        });
+        startStage(Stage.ENCODE, slot -> {
+            final byte[] out = slot.output;
+            int pos = 0;
+            for (int row = 0; row < rows; ++row) {
+                pos = Sgr.putCursorPos(out, pos, originRow + row, originCol);
+                pos = renderer.encodeRow(slot.upper, slot.lower, row * width, encoder, out, pos);
+                pos = Sgr.put(out, pos, Sgr.RESET);
+            }
+            slot.length = pos;
+            renderer.rendered(pos);
+        });
+        startStage(Stage.WRITE, slot -> {
+            sink.write(slot.output, 0, slot.length);
+            sink.flush();
+        });
+    }
+
+    /**
+     * Wait for the last frame to be written.
+     *
+     * @return the number of frames written
+     * @throws IOException if a stage failed, the pipeline being then stopped. Checked failures other than
+     *                     IOException, e.g. an interrupted stage, are the cause of the exception.
+     */
+    public long await() throws IOException, InterruptedException {
+        Thread writer;
+        synchronized (this) {
+            writer = threads[Stage.WRITE.ordinal()];
+        }
+        if (writer == null)
+            throw new IllegalStateException("Pipeline not started.");
+        writer.join();
+
+        Throwable t = failure;
+        if (t instanceof IOException)
+            throw (IOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new IOException("Pipeline stage failed", t);
+        return getFrames();
+    }
+
+    /**
+     * @return the number of frames written so far
+     */
+    public long getFrames() {
+        return done[Stage.WRITE.ordinal()].get();
+    }
+
+    /**
+     * Time spent working by a stage, excluding the time waiting for the others. The stage with the most time
+     * bounds the frame rate.
+     *
+     * @param stage the stage
+     * @return the cumulated processing time, in nanoseconds
+     */
+    public long getBusyNanos(Stage stage) {
+        return busyNanos.get(stage.ordinal());
+    }
+
+    /**
+     * Stop the pipeline and wait for the stages to finish their current frame.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        wakeAll();
+        for (Thread thread : threads) {
+            if (thread == null)
+                continue;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void startStage(Stage stage, Step step) {
+        Thread thread = new Thread(() -> runStage(stage, step), "anscapes-pipeline-" + stage.name().toLowerCase());
+        thread.setDaemon(true);
+        threads[stage.ordinal()] = thread;
+        thread.start();
+    }
+
+    /**
+     * Process the slots in order until the end of the video or a failure.
+     */
+    private void runStage(Stage stage, Step step) {
+
+        final int k = stage.ordinal();
+        // The decoder waits for a slot to be written, the other stages for the previous stage
+        final Sequence upstream = k == 0 ? done[STAGES.length - 1] : done[k - 1];
+
+        try {
+            for (long frame = 0; ; ++frame) {
+                long required = k == 0 ? frame - slots.length + 1 : frame + 1;
+                if (!upstream.await(required))
+                    return;
+
+                Slot slot = slots[(int) (frame % slots.length)];
+                if (k > 0 && slot.end) {
+                    // Let the next stages see the end too, the end is not a written frame
+                    if (k < STAGES.length - 1)
+                        done[k].set(frame + 1);
+                    return;
+                }
+
+                long start = System.nanoTime();
+                step.process(slot);
+                busyNanos.addAndGet(k, System.nanoTime() - start);
+                // Read before publishing, the slot may then be reused
+                boolean end = slot.end;
+                done[k].set(frame + 1);
+
+                if (end)
+                    return;
+            }
+        } catch (Throwable t) {
+            if (failure == null)
+                failure = t;
+            wakeAll();
+        }
+    }
+
+    private void wakeAll() {
+        for (Sequence sequence : done)
+            sequence.wake();
+    }
+
+    /**
+     * Work done by a stage on a frame.
+     */
+    @FunctionalInterface
+    private interface Step {
+        void process(Slot slot) throws IOException;
+    }
+
+    /**
+     * Buffers of a frame in flight. Writes of a stage are published to the next one through the sequences.
+     */
+    private final class Slot {
+
+        private final int[] pixels = new int[sourceWidth * sourceHeight];
+        // Null when the source is already at the target size
+        private final int[] scaled = sourceWidth == width && sourceHeight == renderer.targetHeight ? null : new int[width * renderer.targetHeight];
+        private final int[] upper = new int[width * rows];
+        private final int[] lower = new int[width * rows];
+        private final byte[] output = new byte[rows * (renderer.maxRowLength() + MAX_JUMP_LENGTH)];
+        private int length;
+        // Set by the decoder on the slot after the last frame
+        private boolean end;
+    }
+
+    /**
+     * Progress of a stage, stages waiting on it are woken up when it moves.
+     */
+    private final class Sequence {
+
+        private long value;
+
+        synchronized long get() {
+            return value;
+        }
+
+        synchronized void set(long value) {
+            this.value = value;
+            notifyAll();
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+
+        /**
+         * @return false if the pipeline stopped before the target was reached
+         */
+        synchronized boolean await(long target) throws InterruptedException {
+            while (value < target) {
+                if (closed || failure != null)
+                    return false;
+                wait();
+            }
+            return true;
+        }
+    }
+}
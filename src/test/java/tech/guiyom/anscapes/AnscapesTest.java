@@ -1,6 +1,14 @@
 package tech.guiyom.anscapes;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.Color;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AnscapesTest {
     @Test
@@ -9,4 +17,41 @@ public class AnscapesTest {
         System.out.println(Anscapes.Colors.GREEN_BRIGHT.fg() + Anscapes.Colors.BLUE.bg() + "Some bright green text !" + Anscapes.RESET);
         System.out.println();
     }
+
+    @Test
+    public void testNearestColorTable() {
+        Random random = new Random(42);
+        for (int threshold : new int[]{ 0, 8, 32 }) {
+            for (int i = 0; i < 10000; ++i) {
+                // Only use quantization cell centers, where the table is exact
+                int rgb = (random.nextInt(0x1000000) & 0xfcfcfc) | 0x020202;
+                assertEquals(Anscapes.findNearestColor(new Color(rgb), threshold), Anscapes.findNearestColor(rgb, threshold));
+            }
+        }
+    }
+
+    @Test
+    public void testFrom256code() {
+        assertEquals(new RgbColor(Anscapes.Colors.RED_BRIGHT.color()), Anscapes.from256code(9));
+        assertEquals(new RgbColor(0, 0, 0), Anscapes.from256code(16));
+        assertEquals(new RgbColor(255, 135, 0), Anscapes.from256code(208));
+        assertEquals(new RgbColor(255, 255, 255), Anscapes.from256code(231));
+        assertEquals(new RgbColor(8, 8, 8), Anscapes.from256code(232));
+        assertEquals(new RgbColor(238, 238, 238), Anscapes.from256code(255));
+        assertEquals(Anscapes.CSI + "38;5;208m", Anscapes.from256code(208).fg());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ColorMetric.class)
+    public void testColorMetric(final ColorMetric metric) {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            int rgb = (random.nextInt(0x1000000) & 0xfcfcfc) | 0x020202;
+            Anscapes.Colors nearest = Anscapes.findNearestColor(rgb, 0, metric);
+            int nearestRgb = nearest.color().getRGB() & 0xffffff;
+            for (Anscapes.Colors c : Anscapes.Colors.values())
+                assertTrue(metric.distanceSq(c.color().getRGB(), rgb) >= metric.distanceSq(nearestRgb, rgb));
+        }
+        assertTrue(metric.distanceSq(0x000000, 0xffffff) > metric.squared(90));
+    }
 }
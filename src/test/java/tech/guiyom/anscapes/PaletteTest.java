@@ -0,0 +1,68 @@
+package tech.guiyom.anscapes;
+
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.renderer.Ansi256ImageRenderer;
+import tech.guiyom.anscapes.renderer.AnsiImageRenderer;
+import tech.guiyom.anscapes.renderer.ImageRenderer;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PaletteTest {
+
+    // Tomorrow Night
+    private static final String THEME = "#1d1f21 #cc6666 #b5bd68 #f0c674 #81a2be #b294bb #8abeb7 #c5c8c6\n"
+            + "0x666666, 0xd54e53, 0xb9ca4a, 0xe7c547; 7aa6da c397d8 70c0b1 eaeaea";
+
+    @Test
+    public void testParse() {
+        Palette palette = Palette.parse(THEME);
+        assertEquals(16, palette.size());
+        assertEquals(0x1d1f21, palette.rgb(0));
+        assertEquals(0x666666, palette.rgb(8));
+        assertEquals(0xeaeaea, palette.rgb(15));
+        assertThrows(IllegalArgumentException.class, () -> Palette.parse("#12345"));
+        assertThrows(IllegalArgumentException.class, () -> Palette.parse("#12345g"));
+    }
+
+    @Test
+    public void testXterm256() {
+        Palette palette = Palette.xterm256(Palette.parse(THEME));
+        assertEquals(256, palette.size());
+        assertEquals(0xcc6666, palette.rgb(1));
+        assertEquals(Anscapes.rgb256(208), palette.rgb(208));
+        assertEquals(Palette.XTERM256.rgb(255), palette.rgb(255));
+    }
+
+    @Test
+    public void testNearest() {
+        Palette palette = Palette.xterm256(Palette.parse(THEME));
+        Random random = new Random(42);
+        for (ColorMetric metric : ColorMetric.values()) {
+            for (int i = 0; i < 1000; ++i) {
+                // Only use quantization cell centers, where the table is exact
+                int rgb = (random.nextInt(0x1000000) & 0xfcfcfc) | 0x020202;
+                int nearest = palette.nearest(rgb, metric);
+                for (int code = 0; code < palette.size(); ++code)
+                    assertTrue(metric.distanceSq(palette.rgb(code), rgb) >= metric.distanceSq(palette.rgb(nearest), rgb));
+            }
+        }
+    }
+
+    @Test
+    public void testRenderers() {
+        Palette theme = Palette.parse(THEME);
+        int[] pixels = { 0xff1d1f21, 0xffcc6666, 0xffb5bd68, 0xffeaeaea };
+
+        ImageRenderer ansi = new AnsiImageRenderer(2, 2, theme, ColorMetric.LAB);
+        assertEquals(Anscapes.CSI + "30;42m\u2580" + Anscapes.CSI + "31;107m\u2580" + Anscapes.RESET + System.lineSeparator(),
+                ansi.renderString(pixels, 2, 2));
+
+        ImageRenderer xterm = new Ansi256ImageRenderer(2, 2, Palette.xterm256(theme), ColorMetric.RGB);
+        assertEquals(Anscapes.CSI + "38;5;0;48;5;2m\u2580" + Anscapes.CSI + "38;5;1;48;5;15m\u2580" + Anscapes.RESET + System.lineSeparator(),
+                xterm.renderString(pixels, 2, 2));
+    }
+}
@@ -0,0 +1,59 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.Anscapes;
+import tech.guiyom.anscapes.ColorMode;
+import tech.guiyom.anscapes.Utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class Ansi256ImageRendererTest {
+    @BeforeAll
+    public static void setup() {
+        new File("temp").mkdir();
+    }
+
+    @Test
+    public void testAnsi256Colors() throws IOException {
+
+        ImageRenderer converter = ImageRenderer.createRenderer(ColorMode.ANSI256, 360, 360);
+
+        FileOutputStream out = new FileOutputStream("temp/shield_ansi256.txt");
+        String result = converter.renderString(Utils.getSampleImage());
+        out.write(result.getBytes(StandardCharsets.UTF_8));
+        out.close();
+    }
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            int rgb = random.nextInt(0x1000000);
+            int code = Ansi256ImageRenderer.nearest(rgb);
+            assertEquals(distance(rgb, Anscapes.rgb256(code)), distance(rgb, Anscapes.rgb256(bruteForce(rgb))));
+        }
+    }
+
+    private static int bruteForce(int rgb) {
+        int closest = 16;
+        for (int code = 17; code < 256; ++code) {
+            if (distance(rgb, Anscapes.rgb256(code)) < distance(rgb, Anscapes.rgb256(closest)))
+                closest = code;
+        }
+        return closest;
+    }
+
+    private static int distance(int c1, int c2) {
+        int dr = ((c1 >> 16) & 0xff) - ((c2 >> 16) & 0xff);
+        int dg = ((c1 >> 8) & 0xff) - ((c2 >> 8) & 0xff);
+        int db = (c1 & 0xff) - (c2 & 0xff);
+        return dr * dr + dg * dg + db * db;
+    }
+}
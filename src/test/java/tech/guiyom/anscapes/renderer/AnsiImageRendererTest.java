@@ -5,11 +5,15 @@ import org.junit.jupiter.api.Test;
 import tech.guiyom.anscapes.ColorMode;
 import tech.guiyom.anscapes.Utils;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AnsiImageRendererTest {
     @BeforeAll
@@ -29,27 +33,97 @@ public class AnsiImageRendererTest {
     }
 
     @Test
-    public void testAnsiVideo() {
+    public void testDithering() {
 
-        ImageRenderer converter = ImageRenderer.createRenderer(ColorMode.ANSI, 360, 360);
+        int[] gray = new int[16 * 16];
+        Arrays.fill(gray, 0xff808080);
 
-        BufferedImage img = Utils.getSampleImage();
-        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        AnsiImageRenderer converter = new AnsiImageRenderer(16, 16);
+        String flat = converter.renderString(gray, 16, 16);
+        converter.setDithering(AnsiImageRenderer.DITHERING);
+        String dithered = converter.renderString(gray, 16, 16);
 
-        // Warmup (200 rounds)
-        for (int i = 0; i < 200; ++i)
-            converter.render(data, img.getWidth(), img.getHeight(), (buf, len) -> buf[0] = 'a');
+        // Mid gray lies between white and bright black, nearer to white
+        assertEquals(256, pixels(flat)[7]);
+        int[] pixels = pixels(dithered);
+        assertEquals(256, pixels[7] + pixels[8]);
+        assertTrue(pixels[7] > 128 && pixels[8] > 64);
 
-        int numRun = 400;
-        long startTime = System.nanoTime();
+        AnsiImageRenderer parallel = new AnsiImageRenderer(300, 200);
+        parallel.setDithering(AnsiImageRenderer.DITHERING);
+        parallel.setExecutor(ForkJoinPool.commonPool(), 7);
+        converter = new AnsiImageRenderer(300, 200);
+        converter.setDithering(AnsiImageRenderer.DITHERING);
+        assertEquals(converter.renderString(Utils.getSampleImage()), parallel.renderString(Utils.getSampleImage()));
+    }
+
+    @Test
+    public void testDiffusion() {
 
-        for (int i = 0; i < numRun; ++i)
-            converter.render(data, img.getWidth(), img.getHeight(), (buf, len) -> buf[0] = 'a');
+        int[] gray = new int[16 * 16];
+        Arrays.fill(gray, 0xff808080);
+
+        AnsiImageRenderer converter = new AnsiImageRenderer(16, 16);
+        converter.setDiffusion(Diffusion.FLOYD_STEINBERG);
+        String diffused = converter.renderString(gray, 16, 16);
+
+        // The average of the mix is the gray : 128 = (184 * white + 58 * black) / 256, i.e. 142 white pixels
+        int[] pixels = pixels(diffused);
+        assertEquals(256, pixels[7] + pixels[8]);
+        assertTrue(Math.abs(pixels[7] - 142) <= 4);
+        // Errors don't leak from one frame to the next
+        assertEquals(diffused, converter.renderString(gray, 16, 16));
+
+        // Rows are rendered in order with an executor
+        AnsiImageRenderer parallel = new AnsiImageRenderer(300, 200);
+        parallel.setDiffusion(Diffusion.ATKINSON);
+        parallel.setExecutor(ForkJoinPool.commonPool(), 7);
+        converter = new AnsiImageRenderer(300, 200);
+        converter.setDiffusion(Diffusion.ATKINSON);
+        assertEquals(converter.renderString(Utils.getSampleImage()), parallel.renderString(Utils.getSampleImage()));
+    }
 
-        long totalTime = (System.nanoTime() - startTime);
-        System.out.printf("ANSI Conversion time :%n - Total : %d ms%n - Per frame : %f ms%n - Per pixel : %f ns%n",
-                totalTime / 1_000_000,
-                (double) totalTime / (numRun * 1_000_000),
-                (double) totalTime / (numRun * img.getHeight() * img.getWidth()));
+    /**
+     * Replay the output of a 16 colors renderer.
+     *
+     * @return the number of pixels of each color, indexed by ordinal
+     */
+    static int[] pixels(String output) {
+        int[] counts = new int[16];
+        int fg = -1;
+        int bg = -1;
+        for (int i = 0; i < output.length(); ++i) {
+            char c = output.charAt(i);
+            if (c == '\u001b') {
+                int end = output.indexOf('m', i);
+                String params = output.substring(i + 2, end);
+                if (params.isEmpty()) {
+                    fg = -1;
+                    bg = -1;
+                }
+                for (String param : params.split(";")) {
+                    if (param.isEmpty())
+                        continue;
+                    int code = Integer.parseInt(param);
+                    if (code >= 30 && code <= 37)
+                        fg = code - 30;
+                    else if (code >= 90 && code <= 97)
+                        fg = code - 90 + 8;
+                    else if (code >= 40 && code <= 47)
+                        bg = code - 40;
+                    else if (code >= 100 && code <= 107)
+                        bg = code - 100 + 8;
+                }
+                i = end;
+            } else if (c == AbstractImageRenderer.CHAR_BLANK) {
+                counts[bg] += 2;
+            } else if (c == AbstractImageRenderer.CHAR_FULL) {
+                counts[fg] += 2;
+            } else if (c == AbstractImageRenderer.CHAR_TOP || c == AbstractImageRenderer.CHAR_BOTTOM) {
+                counts[fg]++;
+                counts[bg]++;
+            }
+        }
+        return counts;
     }
 }
@@ -0,0 +1,63 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.Utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameDiffRendererTest {
+
+    @Test
+    public void testOnlyChangedCells() {
+
+        FrameDiffRenderer renderer = new FrameDiffRenderer(new RgbImageRenderer(120, 80));
+
+        BufferedImage img = Utils.getSampleImage();
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+
+        int[] lengths = new int[3];
+        renderer.render(data, img.getWidth(), img.getHeight(), (buf, len) -> lengths[0] = len);
+        renderer.render(data, img.getWidth(), img.getHeight(), (buf, len) -> lengths[1] = len);
+
+        // Change a small area
+        for (int y = 100; y < 140; ++y)
+            for (int x = 100; x < 160; ++x)
+                data[y * img.getWidth() + x] = 0xff00ff00;
+        renderer.render(data, img.getWidth(), img.getHeight(), (buf, len) -> lengths[2] = len);
+
+        assertEquals(0, lengths[1]);
+        assertTrue(lengths[2] > 0 && lengths[2] < lengths[0] / 10);
+    }
+
+    @Test
+    public void testByteOutput() throws IOException {
+
+        FrameDiffRenderer chars = new FrameDiffRenderer(new RgbImageRenderer(120, 80));
+        FrameDiffRenderer bytes = new FrameDiffRenderer(new RgbImageRenderer(120, 80));
+
+        // Red over gray cells, every third one being blue first
+        int[] data = new int[120 * 80];
+        for (int y = 0; y < 80; ++y)
+            for (int x = 0; x < 120; ++x)
+                data[y * 120 + x] = x % 3 == 0 ? 0xff0000ff : y % 2 == 0 ? 0xffff0000 : 0xff808080;
+
+        String[] result = new String[1];
+        for (int frame = 0; frame < 2; ++frame) {
+            chars.render(data, 120, 80, (buf, len) -> result[0] = new String(buf, 0, len));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bytes.render(data, 120, 80, out);
+            assertEquals(out.toString(StandardCharsets.UTF_8), result[0]);
+
+            // Only the blue cells change, the two cells in between are jumped over since a jump takes fewer bytes
+            for (int y = 0; y < 80; ++y)
+                for (int x = 0; x < 120; x += 3)
+                    data[y * 120 + x] = y % 2 == 0 ? 0xffff0000 : 0xff808080;
+        }
+    }
+}
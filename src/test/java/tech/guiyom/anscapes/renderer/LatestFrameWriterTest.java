@@ -0,0 +1,79 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LatestFrameWriterTest {
+
+    @Test
+    public void testDropFrames() throws IOException, InterruptedException {
+
+        // A terminal stuck on the first frame until every other one has been submitted
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+        List<String> frames = new ArrayList<>();
+        WritableByteChannel slow = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                writing.countDown();
+                try {
+                    submitted.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                byte[] frame = new byte[src.remaining()];
+                src.get(frame);
+                frames.add(new String(frame, StandardCharsets.UTF_8));
+                return frame.length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        LatestFrameWriter writer = new LatestFrameWriter(slow);
+        for (int i = 0; i < 100; ++i) {
+            byte[] frame = ("frame " + i).getBytes(StandardCharsets.UTF_8);
+            writer.submit(frame, 0, frame.length);
+            if (i == 0)
+                writing.await();
+        }
+
+        // A failed render leaves nothing in front of the next frame
+        writer.stream().write("partial".getBytes(StandardCharsets.UTF_8));
+        writer.discard();
+
+        // Renderers flush the stream at the end of the frame
+        RgbImageRenderer renderer = new RgbImageRenderer(40, 20);
+        writer.render(renderer, Utils.getSampleImage());
+        submitted.countDown();
+        writer.close();
+
+        // Only the first frame and the last one are written
+        assertEquals(101, writer.getSubmitted());
+        assertEquals(2, writer.getWritten());
+        assertEquals(99, writer.getDropped());
+        assertEquals(2, frames.size());
+        assertEquals("frame 0", frames.get(0));
+        assertEquals(renderer.renderString(Utils.getSampleImage()), frames.get(1));
+
+        assertThrows(IOException.class, () -> writer.submit(new byte[1], 0, 1));
+    }
+}
@@ -0,0 +1,98 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.ColorMetric;
+import tech.guiyom.anscapes.Palette;
+import tech.guiyom.anscapes.Utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RenderCacheTest {
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+
+        BufferedImage img = Utils.getSampleImage();
+        RgbImageRenderer renderer = new RgbImageRenderer(120, 80);
+        RenderCache cache = new RenderCache(10_000_000);
+
+        TerminalImage image = cache.render(renderer, img);
+        assertEquals(renderer.renderString(img), image.getSequence());
+        assertSame(image, cache.render(renderer, img));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.render(renderer, img, out);
+        assertEquals(image.getSequence(), out.toString(StandardCharsets.UTF_8));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Same parameters hit, different ones miss
+        cache.render(new RgbImageRenderer(120, 80), img);
+        cache.render(new RgbImageRenderer(120, 80, 8), img);
+        cache.render(new AnsiImageRenderer(120, 80), img);
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        // A single pixel change misses
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        assertSame(image, cache.render(renderer, data, img.getWidth(), img.getHeight()));
+        data[1000] ^= 1;
+        assertNotSame(image, cache.render(renderer, data, img.getWidth(), img.getHeight()));
+    }
+
+    @Test
+    public void testPaletteKey() {
+
+        BufferedImage img = Utils.getSampleImage();
+        RenderCache cache = new RenderCache(10_000_000);
+        int[] colors = new int[16];
+        for (int i = 0; i < colors.length; ++i)
+            colors[i] = Palette.ANSI.rgb(i);
+
+        // Equal palettes built separately share their entries
+        TerminalImage image = cache.render(new AnsiImageRenderer(120, 80, new Palette(colors), ColorMetric.RGB), img);
+        assertSame(image, cache.render(new AnsiImageRenderer(120, 80, new Palette(colors.clone()), ColorMetric.RGB), img));
+        assertEquals(1, cache.getHits());
+
+        cache.render(new AnsiImageRenderer(120, 80, new Palette(colors), ColorMetric.REDMEAN), img);
+        colors[0] = 0x101010;
+        cache.render(new AnsiImageRenderer(120, 80, new Palette(colors), ColorMetric.RGB), img);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+
+        BufferedImage img = Utils.getSampleImage();
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        RgbImageRenderer renderer = new RgbImageRenderer(120, 80);
+        int size = renderer.renderString(img).getBytes(StandardCharsets.UTF_8).length;
+
+        RenderCache cache = new RenderCache(5L * size);
+        for (int i = 0; i < 10; ++i) {
+            data[0] = i;
+            cache.render(renderer, data, img.getWidth(), img.getHeight());
+        }
+        // Images are kept both as UTF-8 and as strings
+        assertTrue(cache.getBytes() <= 5L * size);
+        assertTrue(cache.size() < 10);
+        assertTrue(cache.getEvictedBytes() > 0);
+
+        // The most recent image is still there
+        cache.render(renderer, data, img.getWidth(), img.getHeight());
+        assertEquals(1, cache.getHits());
+
+        RenderCache small = new RenderCache(size / 2);
+        small.render(renderer, img);
+        assertEquals(0, small.size());
+    }
+}
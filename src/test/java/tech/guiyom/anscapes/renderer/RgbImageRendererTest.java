@@ -1,15 +1,32 @@
 package tech.guiyom.anscapes.renderer;
 
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import tech.guiyom.anscapes.Anscapes;
 import tech.guiyom.anscapes.Utils;
 
+import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RgbImageRendererTest {
     @BeforeAll
@@ -30,32 +47,241 @@ public class RgbImageRendererTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = { 0, 2, 4, 8, 16, 32 })
-    public void testRgbVideo(final int bias) {
+    @ValueSource(ints = { 0, 16 })
+    public void testRgbParallel(final int bias) {
+
+        RgbImageRenderer sequential = new RgbImageRenderer(300, 200, bias);
+        RgbImageRenderer parallel = new RgbImageRenderer(300, 200, bias);
+        parallel.setExecutor(ForkJoinPool.commonPool(), 7);
+
+        assertEquals(sequential.renderString(Utils.getSampleImage()), parallel.renderString(Utils.getSampleImage()));
+    }
+
+    @Test
+    public void testRejectedExecution() {
+
+        RgbImageRenderer sequential = new RgbImageRenderer(300, 200);
+        RgbImageRenderer parallel = new RgbImageRenderer(300, 200);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.shutdown();
+        parallel.setExecutor(executor, 4);
+
+        // Rejected segments are rendered on the caller thread instead of waiting forever
+        assertEquals(sequential.renderString(Utils.getSampleImage()), parallel.renderString(Utils.getSampleImage()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR })
+    public void testRasterAccess(final int type) {
+
+        BufferedImage sample = Utils.getSampleImage();
+        BufferedImage img = new BufferedImage(sample.getWidth(), sample.getHeight(), type);
+        img.getGraphics().drawImage(sample, 0, 0, null);
+        BufferedImage sub = img.getSubimage(20, 10, 300, 200);
+
+        ImageRenderer converter = new RgbImageRenderer(100, 60);
+        assertEquals(converter.renderString(sub.getRGB(0, 0, 300, 200, null, 0, 300), 300, 200), converter.renderString(sub));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PixelFormat.class)
+    public void testDirectByteBuffer(final PixelFormat format) {
+
+        BufferedImage img = Utils.getSampleImage();
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] data = img.getRGB(0, 0, width, height, null, 0, width);
+        int stride = width * format.getBytesPerPixel() + 16;
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(stride * height);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int p = data[y * width + x] | 0xff000000;
+                data[y * width + x] = p;
+                int i = y * stride + x * format.getBytesPerPixel();
+                switch (format) {
+                    case BGRA:
+                        buf.putInt(i, Integer.reverseBytes(p));
+                        break;
+                    case RGBA:
+                        buf.putInt(i, Integer.rotateLeft(p, 8));
+                        break;
+                    case ARGB:
+                        buf.putInt(i, p);
+                        break;
+                    case RGB24:
+                        buf.put(i, (byte) (p >> 16)).put(i + 1, (byte) (p >> 8)).put(i + 2, (byte) p);
+                        break;
+                    case BGR24:
+                        buf.put(i, (byte) p).put(i + 1, (byte) (p >> 8)).put(i + 2, (byte) (p >> 16));
+                        break;
+                }
+            }
+        }
+
+        ImageRenderer converter = new RgbImageRenderer(100, 60);
+        String[] result = new String[1];
+        converter.render(buf, format, width, height, stride, (out, len) -> result[0] = new String(out, 0, len));
+        assertEquals(converter.renderString(data, width, height), result[0]);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 4 })
+    public void testByteOutput(final int segments) throws IOException {
+
+        BufferedImage img = Utils.getSampleImage();
+        RgbImageRenderer converter = new RgbImageRenderer(300, 200, 8);
+        converter.setExecutor(ForkJoinPool.commonPool(), segments);
+        byte[] expected = converter.renderString(img).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        converter.render(img, stream);
+        assertArrayEquals(expected, stream.toByteArray());
+
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        converter.render(img, Channels.newChannel(channel));
+        assertArrayEquals(expected, channel.toByteArray());
+    }
+
+    @Test
+    public void testFailedFrame() throws IOException {
+
+        int[] noise = new int[300 * 400];
+        Random random = new Random(42);
+        for (int i = 0; i < noise.length; ++i)
+            noise[i] = random.nextInt();
+        RgbImageRenderer converter = new RgbImageRenderer(300, 200);
+        byte[] expected = converter.renderString(noise, 300, 400).getBytes(StandardCharsets.UTF_8);
+
+        // Failing after several chunks have been written, half of the rows are missing
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        int[] truncated = Arrays.copyOf(noise, noise.length / 2);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> converter.render(truncated, 300, 400, Channels.newChannel(channel)));
 
-        final int targetWidth = 360;
-        final int targetHeight = 360;
-        ImageRenderer converter = new RgbImageRenderer(targetWidth, targetHeight, bias);
+        // Nothing of the failed frame is written with the next one
+        channel.reset();
+        converter.render(noise, 300, 400, Channels.newChannel(channel));
+        assertArrayEquals(expected, channel.toByteArray());
+    }
+
+    @Test
+    public void testGlyphSelection() {
+
+        ImageRenderer converter = new RgbImageRenderer(4, 4);
+        String row0 = Anscapes.CSI + "48;2;255;0;0m    " + Anscapes.RESET + System.lineSeparator();
+        String row1 = Anscapes.CSI + "48;2;255;0;0m  " + Anscapes.CSI + "38;2;0;0;255m\u2584\u2588" + Anscapes.RESET + System.lineSeparator();
+
+        int r = 0xffff0000, b = 0xff0000ff;
+        int[] pixels = {
+                r, r, r, r,
+                r, r, r, r,
+                r, r, r, b,
+                r, r, b, b
+        };
+        assertEquals(row0 + row1, converter.renderString(pixels, 4, 4));
+    }
+
+    @Test
+    public void testCombinedSequence() {
+
+        ImageRenderer converter = new RgbImageRenderer(2, 2);
+        String expected = Anscapes.CSI + "38;2;255;0;0;48;2;0;0;255m\u2580" + Anscapes.CSI + "38;2;0;255;0m\u2580"
+                + Anscapes.RESET + System.lineSeparator();
+
+        assertEquals(expected, converter.renderString(new int[]{ 0xffff0000, 0xff00ff00, 0xff0000ff, 0xff0000ff }, 2, 2));
+    }
+
+    @Test
+    public void testRepeat() {
+
+        AbstractImageRenderer converter = new RgbImageRenderer(8, 2);
+        converter.setRepeat(true);
+        int[] pixels = new int[16];
+        Arrays.fill(pixels, 0xffff0000);
+        String expected = Anscapes.CSI + "48;2;255;0;0m " + Anscapes.repeat(7) + Anscapes.RESET + System.lineSeparator();
+
+        assertEquals(expected, converter.renderString(pixels, 8, 2));
+    }
+
+    @Test
+    public void testAlphaCutoff() {
+
+        AbstractImageRenderer converter = new RgbImageRenderer(4, 2);
+        converter.setAlphaCutoff(128);
+        int r = 0xffff0000, t = 0x00ffffff;
+        String expected = Anscapes.CSI + "48;2;255;0;0m " + Anscapes.moveRight(2) + " " + Anscapes.RESET + System.lineSeparator();
+
+        assertEquals(expected, converter.renderString(new int[]{ r, t, t, r, r, t, 0x7fff0000, r }, 4, 2));
+    }
+
+    @Test
+    public void testBackground() {
+
+        AbstractImageRenderer converter = new RgbImageRenderer(2, 2);
+        converter.setBackground(Color.BLUE);
+        int[] pixels = { 0x80ff0000, 0x80ff0000, 0x80ff0000, 0x00ffffff };
+        String expected = Anscapes.CSI + "48;2;128;0;127m " + Anscapes.CSI + "38;2;0;0;255m\u2584"
+                + Anscapes.RESET + System.lineSeparator();
+
+        assertEquals(expected, converter.renderString(pixels, 2, 2));
+    }
+
+    @Test
+    public void testBiasController() throws IOException {
 
         BufferedImage img = Utils.getSampleImage();
-        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
-
-        // Warmup (200 rounds)
-        for (int i = 0; i < 200; ++i)
-            converter.render(data, img.getWidth(), img.getHeight(), (buf, len) -> buf[0] = 'a');
-
-        // Bench
-        int numRun = 600;
-        long startTime = System.nanoTime();
-        for (int i = 0; i < numRun; ++i)
-            converter.render(data, img.getWidth(), img.getHeight(), (buf, len) -> buf[0] = 'a');
-        long totalTime = System.nanoTime() - startTime;
-
-        System.out.printf("RGB (bias=%d) | Total (ms) : %d | Per frame (ms) : %f (%dx%d)%n",
-                bias,
-                totalTime / 1_000_000,
-                (double) totalTime / (numRun * 1_000_000),
-                targetWidth,
-                targetHeight);
+        RgbImageRenderer converter = new RgbImageRenderer(120, 80);
+        int full = converter.renderString(img).getBytes(StandardCharsets.UTF_8).length;
+
+        // A budget everything fits in keeps the best quality
+        converter.setBiasController(BiasController.perFrame(full));
+        for (int i = 0; i < 20; ++i)
+            converter.render(img, new ByteArrayOutputStream());
+        assertEquals(0, converter.getBias());
+
+        converter.setBiasController(BiasController.perFrame(full / 2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] biases = new int[20];
+        for (int i = 0; i < 20; ++i) {
+            out.reset();
+            converter.render(img, out);
+            biases[i] = converter.getBias();
+        }
+        assertTrue(out.size() <= full / 2);
+        // Settled on a single bias
+        assertEquals(biases[10], biases[19]);
+        assertTrue(biases[19] > 0);
+    }
+
+    @Test
+    public void testGrowableBuffers() throws IOException {
+
+        // Noise takes about twice the estimated length, every cell changing both colors
+        int[] noise = new int[240 * 160];
+        Random random = new Random(42);
+        for (int i = 0; i < noise.length; ++i)
+            noise[i] = random.nextInt();
+
+        RgbImageRenderer converter = new RgbImageRenderer(240, 160);
+        RgbImageRenderer parallel = new RgbImageRenderer(240, 160);
+        parallel.setExecutor(ForkJoinPool.commonPool(), 3);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.render(noise, 240, 160, out);
+        String expected = out.toString(StandardCharsets.UTF_8);
+        assertTrue(expected.length() > converter.estimatedLength());
+        assertEquals(expected, converter.renderString(noise, 240, 160));
+        assertEquals(expected, parallel.renderString(noise, 240, 160));
+
+        // A whole window of smaller frames shrinks the buffers back
+        long retained = converter.getRetainedBytes();
+        BufferedImage img = new BufferedImage(240, 160, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 2 * BufferSizing.WINDOW; ++i)
+            converter.renderString(img);
+        assertTrue(converter.getRetainedBytes() < retained);
+
+        converter.releaseBuffers();
+        assertTrue(converter.getRetainedBytes() < 4 * 240 * 160 + 4 * 240 * 2);
+        assertEquals(expected, converter.renderString(noise, 240, 160));
     }
 }
@@ -7,6 +7,9 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class ScalingTest {
 
@@ -20,4 +23,29 @@ public class ScalingTest {
         img2.setRGB(0, 0, 64, 64, out, 0, 64);
         ImageIO.write(img2, "png", new File("temp/scaling.png"));
     }
+
+    @Test
+    public void testAreaScaling() throws IOException {
+        BufferedImage img = Utils.getSampleImage();
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        AreaScaler scaler = new AreaScaler(64, 64);
+        scaler.update(img.getWidth(), img.getHeight());
+        int[] out = new int[64 * 64];
+        scaler.resize(PixelSource.of(data, img.getWidth(), img.getHeight()), out, 0, 64, new Scratch());
+        BufferedImage img2 = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        img2.setRGB(0, 0, 64, 64, out, 0, 64);
+        ImageIO.write(img2, "png", new File("temp/scaling_area.png"));
+    }
+
+    @Test
+    public void testAreaScalingUniform() {
+        int[] data = new int[100 * 70];
+        Arrays.fill(data, 0xff123456);
+        AreaScaler scaler = new AreaScaler(30, 20);
+        scaler.update(100, 70);
+        int[] out = new int[30 * 20];
+        scaler.resize(PixelSource.of(data, 100, 70), out, 0, 20, new Scratch());
+        for (int p : out)
+            assertEquals(0xff123456, p);
+    }
 }
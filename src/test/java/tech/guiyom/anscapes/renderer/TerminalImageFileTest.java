@@ -0,0 +1,72 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.guiyom.anscapes.ColorMode;
+import tech.guiyom.anscapes.Utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TerminalImageFileTest {
+
+    @Test
+    public void testWriteAndRead(@TempDir Path dir) throws IOException {
+
+        BufferedImage img = Utils.getSampleImage();
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        TerminalImage image = new RgbImageRenderer(120, 80).render(img);
+
+        // A full frame followed by a partial one
+        FrameDiffRenderer diff = new FrameDiffRenderer(new RgbImageRenderer(120, 80));
+        diff.render(data, img.getWidth(), img.getHeight(), new ByteArrayOutputStream());
+        for (int i = 0; i < 1000; ++i)
+            data[i] = 0xff00ff00;
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        diff.render(data, img.getWidth(), img.getHeight(), partial);
+
+        Path path = dir.resolve("frames.ansc");
+        try (TerminalImageFile.Writer writer = TerminalImageFile.create(path, ColorMode.RGB)) {
+            writer.append(image, 0);
+            writer.append(partial.toByteArray(), 0, partial.size(), 40, 120, 80);
+            assertThrows(IllegalArgumentException.class, () -> writer.append(image, 20));
+        }
+
+        try (TerminalImageFile file = TerminalImageFile.open(path)) {
+            assertEquals(ColorMode.RGB, file.getColorMode());
+            assertEquals(2, file.getFrameCount());
+            assertEquals(40, file.getTimestamp(1));
+            assertEquals(120, file.getWidth(1));
+            assertEquals(80, file.getHeight(1));
+            assertEquals(image.getSequence(), file.getImage(0).getSequence());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            file.transferFrame(1, Channels.newChannel(out));
+            assertArrayEquals(partial.toByteArray(), out.toByteArray());
+
+            out.reset();
+            file.play(Channels.newChannel(out));
+            assertEquals(image.getSequence().getBytes(StandardCharsets.UTF_8).length + partial.size(), out.size());
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+
+        Files.write(path, new byte[64]);
+        assertThrows(IOException.class, () -> TerminalImageFile.open(path));
+
+        // Unknown color modes are rejected
+        ByteBuffer header = ByteBuffer.allocate(24).putInt('A' << 24 | 'N' << 16 | 'S' << 8 | 'C').putInt(2).putInt(3).putInt(0).putLong(24);
+        Files.write(path, header.array());
+        assertThrows(IOException.class, () -> TerminalImageFile.open(path));
+    }
+}
@@ -0,0 +1,84 @@
+package tech.guiyom.anscapes.renderer;
+
+import org.junit.jupiter.api.Test;
+import tech.guiyom.anscapes.Utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VideoPipelineTest {
+
+    @Test
+    public void testFrames() throws IOException, InterruptedException {
+
+        BufferedImage img = Utils.getSampleImage();
+        int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+
+        // Less slots than frames so they get reused
+        VideoPipeline pipeline = new VideoPipeline(new RgbImageRenderer(120, 80), img.getWidth(), img.getHeight(), 3);
+        pipeline.setOrigin(2, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] decoded = {0};
+        pipeline.start(pixels -> {
+            if (decoded[0] == 8)
+                return false;
+            ++decoded[0];
+            System.arraycopy(data, 0, pixels, 0, data.length);
+            return true;
+        }, Channels.newChannel(out));
+
+        assertEquals(8, pipeline.await());
+        assertEquals(8, pipeline.getFrames());
+
+        // Identical frames give identical output
+        String output = out.toString(StandardCharsets.UTF_8);
+        String frame = output.substring(0, output.length() / 8);
+        assertTrue(frame.startsWith("\033[2;3H"));
+        assertEquals(frame.repeat(8), output);
+    }
+
+    @Test
+    public void testFailure() {
+
+        VideoPipeline pipeline = new VideoPipeline(new RgbImageRenderer(24, 16), 48, 32, 2);
+        int[] decoded = {0};
+        pipeline.start(pixels -> {
+            if (decoded[0]++ == 3)
+                throw new IOException("Decoding failed");
+            return true;
+        }, Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertThrows(IOException.class, pipeline::await);
+        assertTrue(pipeline.getFrames() <= 3);
+    }
+
+    @Test
+    public void testCheckedFailure() {
+
+        VideoPipeline pipeline = new VideoPipeline(new RgbImageRenderer(24, 16), 48, 32, 2);
+        Exception failure = new Exception("Not an IOException");
+        pipeline.start(pixels -> {
+            throw VideoPipelineTest.<IOException>sneaky(failure);
+        }, Channels.newChannel(new ByteArrayOutputStream()));
+
+        IOException e = assertThrows(IOException.class, pipeline::await);
+        assertSame(failure, e.getCause());
+        assertEquals(0, pipeline.getFrames());
+    }
+
+    /**
+     * Throw a checked exception the signature doesn't declare.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T sneaky(Throwable t) throws T {
+        throw (T) t;
+    }
+}